@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.starvn.xstava.util.MapperType;
+import com.github.starvn.xstava.util.MapperUtil;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.Value;
+
+/**
+ * Compares two JMH JSON result files, as written by {@code -rf json}, benchmark by benchmark. The
+ * result file of a release is the baseline for the next one: a benchmark regresses when its score
+ * or its allocation per operation ({@code -prof gc}) got worse by more than the threshold.
+ */
+public class BaselineReport {
+
+  private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+  private final Map<String, Entry> baseline;
+  private final Map<String, Entry> current;
+  private final double threshold;
+
+  public BaselineReport(File baseline, File current, double threshold) throws IOException {
+    this.baseline = read(baseline);
+    this.current = read(current);
+    this.threshold = threshold;
+  }
+
+  public List<String> getRegressions() {
+    List<String> regressions = new ArrayList<>();
+    current.forEach(
+        (key, entry) -> {
+          Entry previous = baseline.get(key);
+          if (previous != null
+              && (entry.scoreChange(previous) > threshold
+                  || entry.allocationChange(previous) > threshold)) {
+            regressions.add(key);
+          }
+        });
+    return regressions;
+  }
+
+  public String format() {
+    StringBuilder builder =
+        new StringBuilder(
+            String.format(
+                "%-60s %14s %14s %8s %12s %12s %8s  %s%n",
+                "Benchmark",
+                "Baseline",
+                "Current",
+                "Change",
+                "Base B/op",
+                "Curr B/op",
+                "Change",
+                "Status"));
+    List<String> regressions = getRegressions();
+    current.forEach(
+        (key, entry) -> {
+          Entry previous = baseline.get(key);
+          builder.append(
+              String.format(
+                  "%-60s %14s %14s %8s %12s %12s %8s  %s%n",
+                  key,
+                  previous != null ? formatScore(previous) : "-",
+                  formatScore(entry),
+                  previous != null ? formatChange(entry.scoreChange(previous)) : "-",
+                  previous != null ? formatBytes(previous.allocation) : "-",
+                  formatBytes(entry.allocation),
+                  previous != null ? formatChange(entry.allocationChange(previous)) : "-",
+                  previous == null ? "NEW" : regressions.contains(key) ? "REGRESSION" : "OK"));
+        });
+    baseline.keySet().stream()
+        .filter(key -> !current.containsKey(key))
+        .forEach(key -> builder.append(String.format("%-60s %s%n", key, "REMOVED")));
+    return builder.toString();
+  }
+
+  private static String formatScore(Entry entry) {
+    return String.format("%.3f %s", entry.score, entry.unit);
+  }
+
+  private static String formatBytes(double bytes) {
+    return Double.isNaN(bytes) ? "-" : String.format("%.1f", bytes);
+  }
+
+  private static String formatChange(double change) {
+    return Double.isNaN(change) ? "-" : String.format("%+.1f%%", change);
+  }
+
+  private static Map<String, Entry> read(File file) throws IOException {
+    Map<String, Entry> entries = new TreeMap<>();
+    JsonNode results =
+        MapperUtil.getReader(MapperType.LENIENT_JSON, JsonNode.class).readValue(file);
+    for (JsonNode result : results) {
+      Map<String, String> params = new LinkedHashMap<>();
+      Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields();
+      fields.forEachRemaining(field -> params.put(field.getKey(), field.getValue().asText()));
+      // keep Class.method, the package is the same for every benchmark
+      String benchmark = result.path("benchmark").asText();
+      String key =
+          benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1)
+              + (params.isEmpty() ? "" : params.toString());
+
+      JsonNode primary = result.path("primaryMetric");
+      double allocation = Double.NaN;
+      Iterator<Map.Entry<String, JsonNode>> secondary = result.path("secondaryMetrics").fields();
+      while (secondary.hasNext()) {
+        Map.Entry<String, JsonNode> metric = secondary.next();
+        if (metric.getKey().endsWith(ALLOCATION)) {
+          allocation = metric.getValue().path("score").asDouble();
+        }
+      }
+      entries.put(
+          key,
+          new Entry(
+              primary.path("score").asDouble(), primary.path("scoreUnit").asText(), allocation));
+    }
+    return entries;
+  }
+
+  @Value
+  static class Entry {
+
+    double score;
+    String unit;
+    double allocation;
+
+    /** Percentage by which this entry is worse than {@code previous}; negative when better. */
+    double scoreChange(Entry previous) {
+      if (previous.score == 0 || !unit.equals(previous.unit)) {
+        return Double.NaN;
+      }
+      double change = (score - previous.score) / previous.score * 100;
+      // throughput units (ops/time) improve upwards, time units (time/op) downwards
+      return unit.startsWith("ops/") ? -change : change;
+    }
+
+    double allocationChange(Entry previous) {
+      if (Double.isNaN(allocation) || Double.isNaN(previous.allocation)) {
+        return Double.NaN;
+      }
+      // tiny absolute differences are noise, e.g. 0 vs 0.001 B/op
+      if (Math.abs(allocation - previous.allocation) < 1) {
+        return 0;
+      }
+      return previous.allocation == 0
+          ? Double.POSITIVE_INFINITY
+          : (allocation - previous.allocation) / previous.allocation * 100;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.benchmark;
+
+import java.io.File;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of {@code target/benchmarks.jar}. Takes the usual JMH arguments, always profiles
+ * allocations with the GC profiler and writes the results as JSON, by default to {@code
+ * jmh-result.json}. With {@code -Dbaseline=<file>} the results are compared with an earlier result
+ * file and the run fails when a benchmark regressed by more than {@code -Dthreshold} percent
+ * (default 10), e.g.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar -rff baseline.json
+ * java -Dbaseline=baseline.json -jar target/benchmarks.jar MapperUtil
+ * </pre>
+ */
+@Slf4j
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    String result = commandLine.getResult().orElse("jmh-result.json");
+    ChainedOptionsBuilder options =
+        new OptionsBuilder().parent(commandLine).resultFormat(ResultFormatType.JSON).result(result);
+    if (commandLine.getProfilers().stream()
+        .noneMatch(profiler -> profiler.getKlass().equals(GCProfiler.class.getName()))) {
+      options.addProfiler(GCProfiler.class);
+    }
+    new Runner(options.build()).run();
+
+    String baseline = System.getProperty("baseline");
+    if (baseline == null) {
+      return;
+    }
+
+    double threshold = Double.parseDouble(System.getProperty("threshold", "10"));
+    BaselineReport report = new BaselineReport(new File(baseline), new File(result), threshold);
+    System.out.println();
+    System.out.print(report.format());
+    List<String> regressions = report.getRegressions();
+    if (!regressions.isEmpty()) {
+      log.error("(main) {} benchmarks regressed by more than {}%", regressions.size(), threshold);
+      System.exit(1);
+    }
+  }
+}
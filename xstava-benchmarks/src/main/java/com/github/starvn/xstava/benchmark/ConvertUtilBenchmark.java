@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.benchmark;
+
+import com.github.starvn.xstava.util.ConvertUtil;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link ConvertUtil} parsers on numeric strings. {@code MIXED} includes the malformed values of
+ * the corpus, which take the exception path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConvertUtilBenchmark {
+
+  @Param({"VALID", "MIXED"})
+  private Inputs inputs;
+
+  private List<String> numbers;
+  private int index;
+
+  public enum Inputs {
+    VALID,
+    MIXED
+  }
+
+  @Setup
+  public void setUp() {
+    numbers = Corpus.lines("numbers.txt");
+    if (inputs == Inputs.VALID) {
+      numbers =
+          numbers.stream()
+              .filter(number -> ConvertUtil.getLong(number, null) != null)
+              .collect(Collectors.toList());
+    }
+  }
+
+  @Benchmark
+  public Long getLong() {
+    return ConvertUtil.getLong(next(), 0L);
+  }
+
+  @Benchmark
+  public Integer getInteger() {
+    return ConvertUtil.getInteger(next(), 0);
+  }
+
+  @Benchmark
+  public Double getDouble() {
+    return ConvertUtil.getDouble(next(), 0.0);
+  }
+
+  @Benchmark
+  public BigDecimal getBigDecimal() {
+    return ConvertUtil.getBigDecimal(next(), BigDecimal.ZERO);
+  }
+
+  @Benchmark
+  public Boolean getBoolean() {
+    return ConvertUtil.getBoolean(next(), false);
+  }
+
+  private String next() {
+    index = (index + 1) % numbers.size();
+    return numbers.get(index);
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import lombok.Data;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Inputs shared by the benchmarks: text corpora from {@code corpus/} and generated payloads. The
+ * generators are seeded, so every run measures the same data.
+ */
+@UtilityClass
+public class Corpus {
+
+  private static final long SEED = 20240101L;
+
+  public static List<String> lines(String name) {
+    InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name);
+    if (in == null) {
+      throw new IllegalArgumentException("missing corpus " + name);
+    }
+
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      return reader.lines().collect(Collectors.toList());
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /** Dates spread over 2000 to 2030. */
+  public static List<Date> dates(int count) {
+    Random random = new Random(SEED);
+    long from = 946684800000L;
+    long range = TimeUnit.DAYS.toMillis(365L * 30);
+    List<Date> dates = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      dates.add(new Date(from + (long) (random.nextDouble() * range)));
+    }
+    return dates;
+  }
+
+  /** Printable ASCII text of the given length. */
+  public static String text(int length) {
+    Random random = new Random(SEED);
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append((char) (' ' + random.nextInt(95)));
+    }
+    return builder.toString();
+  }
+
+  /** Orders with {@code items} line items each, shaped like a typical API response. */
+  public static List<Order> orders(int count, int items) {
+    Random random = new Random(SEED);
+    List<String> titles = lines("titles.txt");
+    List<Order> orders = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Order order = new Order();
+      order.setId(100000L + i);
+      order.setCode("ORD-" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36).toUpperCase());
+      order.setStatus(Order.Status.values()[random.nextInt(Order.Status.values().length)]);
+      order.setCreatedAt(new Date(1704067200000L + random.nextInt(Integer.MAX_VALUE)));
+      order.setCustomer(customer(random, i));
+      BigDecimal total = BigDecimal.ZERO;
+      for (int j = 0; j < items; j++) {
+        OrderItem item = new OrderItem();
+        item.setSku("SKU-" + (1000 + random.nextInt(9000)));
+        item.setName(titles.get(random.nextInt(titles.size())).trim());
+        item.setQuantity(1 + random.nextInt(5));
+        item.setPrice(BigDecimal.valueOf(random.nextInt(10_000_000), 2));
+        total = total.add(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        order.getItems().add(item);
+      }
+      order.setTotal(total.setScale(2, RoundingMode.HALF_UP));
+      order.getAttributes().put("channel", random.nextBoolean() ? "web" : "mobile");
+      order.getAttributes().put("coupon", random.nextInt(4) == 0 ? "SALE50" : null);
+      orders.add(order);
+    }
+    return orders;
+  }
+
+  private static Customer customer(Random random, int index) {
+    Customer customer = new Customer();
+    customer.setId(5000L + random.nextInt(100_000));
+    customer.setName("Nguyễn Văn " + (char) ('A' + index % 26));
+    customer.setEmail("customer" + index + "@example.com");
+    customer.setPhone("09" + (10_000_000 + random.nextInt(90_000_000)));
+    customer.setVip(random.nextInt(10) == 0);
+    return customer;
+  }
+
+  @Data
+  public static class Order {
+
+    public enum Status {
+      PENDING,
+      PAID,
+      SHIPPED,
+      DELIVERED,
+      CANCELLED
+    }
+
+    private Long id;
+    private String code;
+    private Status status;
+    private Date createdAt;
+    private Customer customer;
+    private List<OrderItem> items = new ArrayList<>();
+    private BigDecimal total;
+    private Map<String, String> attributes = new LinkedHashMap<>();
+  }
+
+  @Data
+  public static class OrderItem {
+
+    private String sku;
+    private String name;
+    private Integer quantity;
+    private BigDecimal price;
+  }
+
+  @Data
+  public static class Customer {
+
+    private Long id;
+    private String name;
+    private String email;
+    private String phone;
+    private boolean vip;
+  }
+}
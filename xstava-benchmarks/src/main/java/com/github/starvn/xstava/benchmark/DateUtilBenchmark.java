@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.benchmark;
+
+import com.github.starvn.xstava.util.DateUtil;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** {@link DateUtil#toString(Date, String)} and {@link DateUtil#toDate(String, String)}. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DateUtilBenchmark {
+
+  @Param({DateUtil.SimpleFormat.SF_4, DateUtil.SimpleFormat.SF_1, "yyyy-MM-dd'T'HH:mm:ss.SSSZ"})
+  private String format;
+
+  private List<Date> dates;
+  private List<String> strings;
+  private int index;
+
+  @Setup
+  public void setUp() {
+    dates = Corpus.dates(1024);
+    strings =
+        dates.stream().map(date -> DateUtil.toString(date, format)).collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public String toStringDate() {
+    return DateUtil.toString(dates.get(next()), format);
+  }
+
+  @Benchmark
+  public Date toDate() {
+    return DateUtil.toDate(strings.get(next()), format);
+  }
+
+  private int next() {
+    index = (index + 1) & 1023;
+    return index;
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.benchmark;
+
+import com.github.starvn.xstava.util.MapperUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link MapperUtil#toJson} on a single order, a page of orders and a large export, plus the {@link
+ * MapperUtil#toMap(String)} round trip, reading one field with {@link MapperUtil#extract} against
+ * {@code toMap(json).get(...)}, and bean-to-bean mapping of the orders, compiled against {@link
+ * MapperUtil#getModelMapper()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapperUtilBenchmark {
+
+  @Param({"SMALL", "MEDIUM", "LARGE"})
+  private Payload payload;
+
+  private List<Corpus.Order> orders;
+  private Object value;
+  private String json;
+
+  public enum Payload {
+    SMALL(1, 2),
+    MEDIUM(20, 5),
+    LARGE(200, 10);
+
+    private final int orders;
+    private final int items;
+
+    Payload(int orders, int items) {
+      this.orders = orders;
+      this.items = items;
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    orders = Corpus.orders(payload.orders, payload.items);
+    value = orders.size() == 1 ? orders.get(0) : orders;
+    json = MapperUtil.toJson(orders.get(0));
+  }
+
+  @Benchmark
+  public String toJson() {
+    return MapperUtil.toJson(value);
+  }
+
+  @Benchmark
+  public Map<String, Object> toMap() {
+    return MapperUtil.toMap(json);
+  }
+
+  @Benchmark
+  public Corpus.Order fromJson() {
+    return MapperUtil.fromJson(json, Corpus.Order.class);
+  }
+
+  @Benchmark
+  public Object extract() {
+    return MapperUtil.extract(json, "/customer/email");
+  }
+
+  @Benchmark
+  @SuppressWarnings("unchecked")
+  public Object toMapGet() {
+    return ((Map<String, Object>) MapperUtil.toMap(json).get("customer")).get("email");
+  }
+
+  @Benchmark
+  public List<Corpus.Order> mapAll() {
+    return MapperUtil.mapAll(orders, Corpus.Order.class);
+  }
+
+  @Benchmark
+  public List<Corpus.Order> modelMapperMapAll() {
+    List<Corpus.Order> result = new ArrayList<>(orders.size());
+    for (Corpus.Order order : orders) {
+      result.add(MapperUtil.getModelMapper().map(order, Corpus.Order.class));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.boot.listener;
+
+import com.github.starvn.xstava.client.service.DefaultHttpClient;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Opens the configured number of connections per route once the application has started, e.g.
+ * {@code new HttpClientPrewarmListener(httpClient, Map.of("https://api.example.com", 10))}.
+ */
+@Slf4j
+public class HttpClientPrewarmListener implements ApplicationListener<ApplicationStartedEvent> {
+
+  private final DefaultHttpClient httpClient;
+  private final Map<String, Integer> routes;
+
+  public HttpClientPrewarmListener(DefaultHttpClient httpClient, Map<String, Integer> routes) {
+    this.httpClient = httpClient;
+    this.routes = new LinkedHashMap<>(routes);
+  }
+
+  @Override
+  public void onApplicationEvent(ApplicationStartedEvent event) {
+    routes.forEach(
+        (url, connections) -> {
+          int warmed = httpClient.prewarm(url, connections);
+          log.info("(prewarm) url: {}|connections: {}/{}", url, warmed, connections);
+        });
+  }
+}
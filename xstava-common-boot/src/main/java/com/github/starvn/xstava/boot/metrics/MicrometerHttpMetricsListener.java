@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.boot.metrics;
+
+import com.github.starvn.xstava.client.metrics.HttpMetricsListener;
+import com.github.starvn.xstava.client.metrics.HttpRequestMetrics;
+import com.github.starvn.xstava.client.service.DefaultAsyncHttpClient;
+import com.github.starvn.xstava.client.service.DefaultHttpClient;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
+import org.apache.hc.core5.pool.PoolStats;
+
+/**
+ * Publishes the request metrics and pool usage of a {@link DefaultHttpClient} to Micrometer, e.g.
+ * {@code new MicrometerHttpMetricsListener(httpClient, "payment").bindTo(meterRegistry)}. Leased
+ * and pending connections are also published per route, from the first request to it. A {@link
+ * DefaultAsyncHttpClient} publishes its request metrics only, as its pool is not exposed.
+ */
+public class MicrometerHttpMetricsListener implements HttpMetricsListener, MeterBinder {
+
+  private static final String PREFIX = "xstava.http.client";
+
+  private final DefaultHttpClient httpClient;
+  private final Consumer<HttpMetricsListener> registration;
+  private final String name;
+  private final Set<String> routes = ConcurrentHashMap.newKeySet();
+  private MeterRegistry registry;
+
+  public MicrometerHttpMetricsListener(DefaultHttpClient httpClient, String name) {
+    this.httpClient = httpClient;
+    this.registration = httpClient::addMetricsListener;
+    this.name = name;
+  }
+
+  public MicrometerHttpMetricsListener(DefaultAsyncHttpClient httpClient, String name) {
+    this.httpClient = null;
+    this.registration = httpClient::addMetricsListener;
+    this.name = name;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    this.registry = registry;
+    if (httpClient != null) {
+      bindPoolGauge("leased", PoolStats::getLeased);
+      bindPoolGauge("pending", PoolStats::getPending);
+      bindPoolGauge("available", PoolStats::getAvailable);
+      bindPoolGauge("max", PoolStats::getMax);
+    }
+    registration.accept(this);
+  }
+
+  @Override
+  public void onRequest(HttpRequestMetrics metrics) {
+    if (httpClient != null && routes.add(metrics.getRoute())) {
+      bindRoutePoolGauge(metrics.getRoute(), "leased", PoolStats::getLeased);
+      bindRoutePoolGauge(metrics.getRoute(), "pending", PoolStats::getPending);
+    }
+
+    Tags routeTags = Tags.of("client", name, "route", metrics.getRoute());
+    Timer.builder(PREFIX + ".requests")
+        .tags(routeTags)
+        .tag("method", metrics.getMethod())
+        .tag(
+            "status", metrics.getStatusCode() != null ? metrics.getStatusCode().toString() : "none")
+        .tag(
+            "error",
+            metrics.isSuccess() ? "none" : metrics.getErrorClass().name().toLowerCase(Locale.ROOT))
+        .publishPercentileHistogram()
+        .register(registry)
+        .record(metrics.getTotalNanos(), TimeUnit.NANOSECONDS);
+
+    recordPhase("lease", routeTags, metrics.getLeaseNanos());
+    recordPhase("dns", routeTags, metrics.getDnsNanos());
+    recordPhase("connect", routeTags, metrics.getConnectNanos());
+    recordPhase("tls", routeTags, metrics.getTlsNanos());
+    recordPhase("ttfb", routeTags, metrics.getTimeToFirstByteNanos());
+
+    DistributionSummary.builder(PREFIX + ".bytes.sent")
+        .baseUnit("bytes")
+        .tags(routeTags)
+        .register(registry)
+        .record(metrics.getBytesSent());
+    DistributionSummary.builder(PREFIX + ".bytes.received")
+        .baseUnit("bytes")
+        .tags(routeTags)
+        .register(registry)
+        .record(metrics.getBytesReceived());
+  }
+
+  private void recordPhase(String phase, Tags tags, long nanos) {
+    if (nanos > 0) {
+      Timer.builder(PREFIX + "." + phase)
+          .tags(tags)
+          .publishPercentileHistogram()
+          .register(registry)
+          .record(nanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void bindPoolGauge(String state, ToDoubleFunction<PoolStats> value) {
+    Gauge.builder(
+            PREFIX + ".pool." + state,
+            httpClient,
+            client -> value.applyAsDouble(client.getPoolStats()))
+        .tag("client", name)
+        .register(registry);
+  }
+
+  private void bindRoutePoolGauge(String route, String state, ToDoubleFunction<PoolStats> value) {
+    Gauge.builder(
+            PREFIX + ".route.pool." + state,
+            httpClient,
+            client -> value.applyAsDouble(client.getPoolStats(route)))
+        .tags("client", name, "route", route)
+        .register(registry);
+  }
+}
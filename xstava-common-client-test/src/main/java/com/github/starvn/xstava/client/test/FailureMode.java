@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.test;
+
+/** How a {@link StubResponse} fails when failure injection picks a request. */
+public enum FailureMode {
+  /** Answers with {@code failureStatus}. */
+  ERROR_STATUS,
+  /** Closes the connection without a response. */
+  RESET,
+  /** Never answers, so the client runs into its socket timeout. */
+  HANG
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.test;
+
+import com.github.starvn.xstava.client.HttpResult;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drives a client with a fixed number of concurrent callers and reports throughput and latency
+ * percentiles. Blocking calls run closed-loop on {@code concurrency} threads; asynchronous calls
+ * keep at most {@code concurrency} requests in flight. A result counts as an error when it is
+ * missing, has no status or a status of 400 and above, or when the call threw.
+ */
+@Slf4j
+public class LoadDriver {
+
+  private final String name;
+  private final int concurrency;
+  private final int warmupRequests;
+
+  public LoadDriver(String name, int concurrency, int warmupRequests) {
+    this.name = name;
+    this.concurrency = concurrency;
+    this.warmupRequests = warmupRequests;
+  }
+
+  public LoadReport run(int requests, Supplier<? extends HttpResult> call) {
+    warmUp(call);
+    AtomicLong remaining = new AtomicLong(requests);
+    return runWorkers(() -> remaining.getAndDecrement() > 0, call);
+  }
+
+  public LoadReport run(Duration duration, Supplier<? extends HttpResult> call) {
+    warmUp(call);
+    long deadline = System.nanoTime() + duration.toNanos();
+    return runWorkers(() -> System.nanoTime() < deadline, call);
+  }
+
+  public LoadReport runAsync(
+      int requests, Supplier<? extends CompletableFuture<? extends HttpResult>> call) {
+    for (int i = 0; i < warmupRequests; i++) {
+      call.get().join();
+    }
+
+    Semaphore inFlight = new Semaphore(concurrency);
+    Recorder recorder = new Recorder();
+    List<CompletableFuture<?>> futures = new ArrayList<>(requests);
+    long start = System.nanoTime();
+    for (int i = 0; i < requests; i++) {
+      inFlight.acquireUninterruptibly();
+      long requestStart = System.nanoTime();
+      futures.add(
+          call.get()
+              .whenComplete(
+                  (result, ex) -> {
+                    synchronized (recorder) {
+                      recorder.record(System.nanoTime() - requestStart, ex == null ? result : null);
+                    }
+                    inFlight.release();
+                  }));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+        .exceptionally(ex -> null)
+        .join();
+    return report(recorder, System.nanoTime() - start);
+  }
+
+  private void warmUp(Supplier<? extends HttpResult> call) {
+    for (int i = 0; i < warmupRequests; i++) {
+      call.get();
+    }
+  }
+
+  @SneakyThrows
+  private LoadReport runWorkers(BooleanSupplier hasNext, Supplier<? extends HttpResult> call) {
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    try {
+      List<Future<Recorder>> workers = new ArrayList<>(concurrency);
+      long start = System.nanoTime();
+      for (int i = 0; i < concurrency; i++) {
+        workers.add(
+            executor.submit(
+                () -> {
+                  Recorder recorder = new Recorder();
+                  while (hasNext.getAsBoolean()) {
+                    long requestStart = System.nanoTime();
+                    HttpResult result;
+                    try {
+                      result = call.get();
+                    } catch (RuntimeException ex) {
+                      log.debug("(run) call failed", ex);
+                      result = null;
+                    }
+                    recorder.record(System.nanoTime() - requestStart, result);
+                  }
+                  return recorder;
+                }));
+      }
+
+      Recorder total = new Recorder();
+      for (Future<Recorder> worker : workers) {
+        total.merge(worker.get());
+      }
+      return report(total, System.nanoTime() - start);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private LoadReport report(Recorder recorder, long elapsedNanos) {
+    LoadReport report =
+        LoadReport.of(
+            name,
+            Arrays.copyOf(recorder.latencies, recorder.size),
+            recorder.errors,
+            recorder.statusCodes,
+            elapsedNanos);
+    log.info("(report) {}", report.toSummary());
+    return report;
+  }
+
+  private static class Recorder {
+
+    private final Map<Integer, Long> statusCodes = new TreeMap<>();
+    private long[] latencies = new long[1024];
+    private int size;
+    private long errors;
+
+    void record(long nanos, HttpResult result) {
+      if (size == latencies.length) {
+        latencies = Arrays.copyOf(latencies, size * 2);
+      }
+      latencies[size++] = nanos;
+
+      Integer statusCode = result != null ? result.getStatusCode() : null;
+      if (statusCode != null) {
+        statusCodes.merge(statusCode, 1L, Long::sum);
+      }
+      if (statusCode == null || statusCode >= 400) {
+        errors++;
+      }
+    }
+
+    void merge(Recorder other) {
+      if (size + other.size > latencies.length) {
+        latencies = Arrays.copyOf(latencies, size + other.size);
+      }
+      System.arraycopy(other.latencies, 0, latencies, size, other.size);
+      size += other.size;
+      errors += other.errors;
+      other.statusCodes.forEach((code, count) -> statusCodes.merge(code, count, Long::sum));
+    }
+  }
+}
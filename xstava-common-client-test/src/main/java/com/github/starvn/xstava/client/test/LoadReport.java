@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.Value;
+
+/** Outcome of a {@link LoadDriver} run; latencies are in milliseconds. */
+@Value
+public class LoadReport {
+
+  String name;
+  long requests;
+  long errors;
+  Map<Integer, Long> statusCodes;
+  long elapsedNanos;
+  double throughput;
+  double mean;
+  double p50;
+  double p90;
+  double p99;
+  double p999;
+  double max;
+
+  static LoadReport of(
+      String name,
+      long[] latencies,
+      long errors,
+      Map<Integer, Long> statusCodes,
+      long elapsedNanos) {
+    long[] sorted = latencies.clone();
+    Arrays.sort(sorted);
+    double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+    return new LoadReport(
+        name,
+        sorted.length,
+        errors,
+        statusCodes,
+        elapsedNanos,
+        elapsedSeconds > 0 ? sorted.length / elapsedSeconds : 0,
+        toMillis((long) Arrays.stream(sorted).average().orElse(0)),
+        percentile(sorted, 50),
+        percentile(sorted, 90),
+        percentile(sorted, 99),
+        percentile(sorted, 99.9),
+        sorted.length > 0 ? toMillis(sorted[sorted.length - 1]) : 0);
+  }
+
+  private static double percentile(long[] sorted, double percentile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+    return toMillis(sorted[Math.max(0, Math.min(index, sorted.length - 1))]);
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+
+  public String toSummary() {
+    return String.format(
+        "%s: %d requests, %d errors, %.1f req/s, mean %.2f ms, p50 %.2f ms, p90 %.2f ms,"
+            + " p99 %.2f ms, p99.9 %.2f ms, max %.2f ms, status %s",
+        name, requests, errors, throughput, mean, p50, p90, p99, p999, max, statusCodes);
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.test;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Embedded HTTP server on the loopback interface that stands in for an upstream. Every path answers
+ * with its {@link StubResponse}, or the default one, and the server counts requests and tracks how
+ * many are in flight, so pool sizes and timeouts can be checked without a network.
+ */
+@Slf4j
+public class StubHttpServer implements Closeable {
+
+  /** Sent instead of a response, see {@link FailureMode#RESET}. */
+  private static class ResetException extends RuntimeException {
+
+    ResetException() {
+      super("reset", null, false, false);
+    }
+  }
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Map<String, StubResponse> responses;
+  private final CountDownLatch stopped;
+  private final LongAdder requestCount;
+  private final LongAdder failureCount;
+  private final LongAdder bytesReceived;
+  private final AtomicInteger activeCount;
+  private final AtomicInteger maxActiveCount;
+  private volatile StubResponse defaultResponse;
+
+  public StubHttpServer() throws IOException {
+    this(0);
+  }
+
+  public StubHttpServer(int port) throws IOException {
+    enableNoDelay();
+    this.server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.executor =
+        Executors.newCachedThreadPool(
+            runnable -> {
+              Thread thread = new Thread(runnable, "xstava-stub");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.responses = new ConcurrentHashMap<>();
+    this.stopped = new CountDownLatch(1);
+    this.requestCount = new LongAdder();
+    this.failureCount = new LongAdder();
+    this.bytesReceived = new LongAdder();
+    this.activeCount = new AtomicInteger();
+    this.maxActiveCount = new AtomicInteger();
+    this.defaultResponse = new StubResponse();
+    this.server.setExecutor(executor);
+    this.server.createContext("/", this::handle);
+  }
+
+  public StubHttpServer start() {
+    server.start();
+    log.info("(start) url: {}", getUrl(""));
+    return this;
+  }
+
+  public StubHttpServer stub(String path, StubResponse response) {
+    responses.put(path, response);
+    return this;
+  }
+
+  public StubHttpServer setDefaultResponse(StubResponse response) {
+    this.defaultResponse = response;
+    return this;
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  public String getUrl(String path) {
+    return "http://" + server.getAddress().getHostString() + ":" + getPort() + path;
+  }
+
+  public long getRequestCount() {
+    return requestCount.sum();
+  }
+
+  public long getFailureCount() {
+    return failureCount.sum();
+  }
+
+  public long getBytesReceived() {
+    return bytesReceived.sum();
+  }
+
+  public int getActiveCount() {
+    return activeCount.get();
+  }
+
+  /** Highest number of requests served at the same time since the last reset. */
+  public int getMaxActiveCount() {
+    return maxActiveCount.get();
+  }
+
+  public void resetCounters() {
+    requestCount.reset();
+    failureCount.reset();
+    bytesReceived.reset();
+    maxActiveCount.set(activeCount.get());
+  }
+
+  @Override
+  public void close() {
+    stopped.countDown();
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * Headers and body are written separately, so without TCP_NODELAY every response would wait for a
+   * delayed ACK and the stub would add ~40 ms to each request. The JDK server reads the flag once,
+   * when the first server is created, so it is only set here and never overrides an explicit value.
+   */
+  private static void enableNoDelay() {
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requestCount.increment();
+    maxActiveCount.accumulateAndGet(activeCount.incrementAndGet(), Math::max);
+    try (InputStream body = exchange.getRequestBody()) {
+      bytesReceived.add(body.transferTo(OutputStream.nullOutputStream()));
+      StubResponse response =
+          responses.getOrDefault(exchange.getRequestURI().getPath(), defaultResponse);
+      if (!pause(delay(response))) {
+        return;
+      }
+
+      if (response.getFailureRate() > 0
+          && ThreadLocalRandom.current().nextDouble() < response.getFailureRate()) {
+        failureCount.increment();
+        fail(exchange, response);
+      } else {
+        respond(exchange, response, response.getStatus());
+      }
+    } finally {
+      activeCount.decrementAndGet();
+      exchange.close();
+    }
+  }
+
+  private long delay(StubResponse response) {
+    long jitter = response.getLatencyJitter();
+    return response.getLatency()
+        + (jitter > 0 ? ThreadLocalRandom.current().nextLong(-jitter, jitter + 1) : 0);
+  }
+
+  private void fail(HttpExchange exchange, StubResponse response) throws IOException {
+    switch (response.getFailureMode()) {
+      case RESET:
+        // the server drops the connection when a handler throws
+        throw new ResetException();
+      case HANG:
+        pause(Long.MAX_VALUE);
+        break;
+      default:
+        respond(exchange, response, response.getFailureStatus());
+    }
+  }
+
+  private void respond(HttpExchange exchange, StubResponse response, int status)
+      throws IOException {
+    Headers headers = exchange.getResponseHeaders();
+    headers.set("Content-Type", response.getContentType());
+    response.getHeaders().forEach(headers::set);
+
+    int payloadSize = response.getPayloadSize();
+    boolean head = "HEAD".equalsIgnoreCase(exchange.getRequestMethod());
+    if (payloadSize == 0 || head) {
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+
+    int dripRate = response.getDripBytesPerSecond();
+    boolean chunked = response.getChunked() || dripRate > 0;
+    exchange.sendResponseHeaders(status, chunked ? 0 : payloadSize);
+    byte[] chunk = new byte[Math.min(payloadSize, response.getChunkSize())];
+    Arrays.fill(chunk, (byte) 'x');
+    long pauseMillis = dripRate > 0 ? chunk.length * 1000L / dripRate : 0;
+    try (OutputStream out = exchange.getResponseBody()) {
+      for (int sent = 0; sent < payloadSize; sent += chunk.length) {
+        out.write(chunk, 0, Math.min(chunk.length, payloadSize - sent));
+        if (chunked) {
+          out.flush();
+        }
+        if (pauseMillis > 0 && !pause(pauseMillis)) {
+          return;
+        }
+      }
+    }
+  }
+
+  /** Sleeps for the given time; returns false when the server was stopped meanwhile. */
+  private boolean pause(long millis) {
+    if (millis <= 0) {
+      return true;
+    }
+
+    try {
+      return !stopped.await(millis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Data;
+
+/**
+ * What {@link StubHttpServer} answers for a path: the status and payload size, how long it waits
+ * before answering, how the body is sent and how often it fails.
+ */
+@Data
+public class StubResponse {
+
+  private Integer status;
+  private Long latency;
+  private Long latencyJitter;
+  private Integer payloadSize;
+  private String contentType;
+  private Boolean chunked;
+  private Integer chunkSize;
+  private Integer dripBytesPerSecond;
+  private Double failureRate;
+  private FailureMode failureMode;
+  private Integer failureStatus;
+  private Map<String, String> headers;
+
+  public StubResponse() {
+    this.init();
+  }
+
+  public StubResponse(Integer status, Long latency, Integer payloadSize) {
+    this.status = status;
+    this.latency = latency;
+    this.payloadSize = payloadSize;
+    this.init();
+  }
+
+  private void init() {
+    if (this.status == null) {
+      this.status = 200;
+    }
+
+    if (this.latency == null) {
+      this.latency = 0L;
+    }
+
+    if (this.latencyJitter == null) {
+      this.latencyJitter = 0L;
+    }
+
+    if (this.payloadSize == null) {
+      this.payloadSize = 0;
+    }
+
+    if (this.contentType == null) {
+      this.contentType = "application/octet-stream";
+    }
+
+    if (this.chunked == null) {
+      this.chunked = false;
+    }
+
+    if (this.chunkSize == null) {
+      this.chunkSize = 8192;
+    }
+
+    if (this.dripBytesPerSecond == null) {
+      this.dripBytesPerSecond = 0;
+    }
+
+    if (this.failureRate == null) {
+      this.failureRate = 0.0;
+    }
+
+    if (this.failureMode == null) {
+      this.failureMode = FailureMode.ERROR_STATUS;
+    }
+
+    if (this.failureStatus == null) {
+      this.failureStatus = 503;
+    }
+
+    if (this.headers == null) {
+      this.headers = new LinkedHashMap<>();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.balancer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.service.DefaultHttpClient;
+import com.github.starvn.xstava.client.test.StubHttpServer;
+import com.github.starvn.xstava.client.test.StubResponse;
+import java.io.IOException;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class LoadBalancedHttpClientTest {
+
+  private StubHttpServer server;
+  private LoadBalancedHttpClient client;
+  private ServiceEndpoint endpoint;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server =
+        new StubHttpServer()
+            .stub("/ok", new StubResponse(200, 0L, 16))
+            .stub("/unavailable", new StubResponse(503, 0L, 16))
+            .start();
+    HttpProperties httpProperties = new HttpProperties();
+    client =
+        new LoadBalancedHttpClient(
+            new DefaultHttpClient(httpProperties), httpProperties, new LoadBalancerProperties());
+    endpoint = client.registerService("stub", List.of(server.getUrl(""))).getEndpoints().get(0);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  void countsAStreamedServerErrorAsAFailure() {
+    int statusCode =
+        client.stream(
+            HttpMethod.GET, "lb://stub/unavailable", null, null, (code, headers, body) -> code);
+
+    assertEquals(503, statusCode);
+    assertEquals(1, endpoint.getFailureCount());
+  }
+
+  @Test
+  void countsAFailingConsumerAsAFailure() {
+    client.stream(
+        HttpMethod.GET,
+        "lb://stub/ok",
+        null,
+        null,
+        (code, headers, body) -> {
+          throw new IOException("truncated");
+        });
+
+    assertEquals(1, endpoint.getFailureCount());
+  }
+
+  @Test
+  void countsASuccessfulStreamAsASuccess() {
+    client.stream(HttpMethod.GET, "lb://stub/ok", null, null, (code, headers, body) -> code);
+
+    assertEquals(1, endpoint.getRequestCount());
+    assertEquals(0, endpoint.getFailureCount());
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.service.DefaultHttpClient;
+import com.github.starvn.xstava.client.test.StubHttpServer;
+import com.github.starvn.xstava.client.test.StubResponse;
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TieredHttpCacheStorageTest {
+
+  @TempDir Path cacheDirectory;
+
+  private StubHttpServer server;
+  private DefaultHttpClient client;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new StubHttpServer().stub("/a", cacheable()).stub("/b", cacheable()).start();
+    HttpProperties httpProperties = new HttpProperties();
+    httpProperties.setCacheEnabled(true);
+    httpProperties.setCacheMaxEntries(1);
+    httpProperties.setCacheDiskMaxEntries(10);
+    httpProperties.setCacheDirectory(cacheDirectory.toString());
+    client = new DefaultHttpClient(httpProperties);
+  }
+
+  @AfterEach
+  void tearDown() {
+    client.close();
+    server.close();
+  }
+
+  @Test
+  void servesEntriesEvictedFromMemoryFromDisk() {
+    query("/a");
+    query("/b");
+
+    query("/a");
+    HttpCacheStats stats = client.getCacheStats();
+    assertEquals(2, server.getRequestCount());
+    assertEquals(1, stats.getDiskTierHits());
+
+    long memoryTierHits = stats.getMemoryTierHits();
+    query("/a");
+    assertEquals(2, server.getRequestCount());
+    assertEquals(1, stats.getDiskTierHits());
+    assertEquals(memoryTierHits + 1, stats.getMemoryTierHits());
+    assertEquals(2, stats.getHits());
+  }
+
+  private void query(String path) {
+    assertEquals(200, client.query(HttpMethod.GET, server.getUrl(path), false).getStatusCode());
+  }
+
+  private static StubResponse cacheable() {
+    StubResponse response = new StubResponse(200, 0L, 64);
+    response.getHeaders().put("Cache-Control", "max-age=60");
+    return response;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hc.client5.http.DnsResolver;
+import org.junit.jupiter.api.Test;
+
+class CachingDnsResolverTest {
+
+  private static final InetAddress[] ADDRESSES = {InetAddress.getLoopbackAddress()};
+
+  private final AtomicInteger lookups = new AtomicInteger();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private volatile RuntimeException runtimeFailure;
+  private volatile UnknownHostException failure;
+
+  private final DnsResolver delegate =
+      new DnsResolver() {
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+          lookups.incrementAndGet();
+          try {
+            release.await();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+          if (runtimeFailure != null) {
+            throw runtimeFailure;
+          }
+          if (failure != null) {
+            throw failure;
+          }
+          return ADDRESSES.clone();
+        }
+
+        @Override
+        public String resolveCanonicalHostname(String host) {
+          return host;
+        }
+      };
+
+  @Test
+  void coalescesConcurrentLookups() throws InterruptedException {
+    CachingDnsResolver resolver = new CachingDnsResolver(delegate, 60_000, 0);
+
+    List<CompletableFuture<InetAddress[]>> results = resolveConcurrently(resolver, 8);
+    release.countDown();
+
+    results.forEach(result -> assertEquals(ADDRESSES[0], result.join()[0]));
+    assertEquals(1, lookups.get());
+  }
+
+  @Test
+  void rethrowsRuntimeFailuresToEveryWaiter() throws InterruptedException {
+    CachingDnsResolver resolver = new CachingDnsResolver(delegate, 60_000, 0);
+    runtimeFailure = new IllegalStateException("resolver broken");
+
+    List<CompletableFuture<InetAddress[]>> results = resolveConcurrently(resolver, 4);
+    release.countDown();
+
+    for (CompletableFuture<InetAddress[]> result : results) {
+      CompletionException ex = assertThrows(CompletionException.class, result::join);
+      assertSame(runtimeFailure, ex.getCause());
+    }
+  }
+
+  @Test
+  void servesStaleAddressesWhenARefreshFails() throws Exception {
+    release.countDown();
+    CachingDnsResolver resolver = new CachingDnsResolver(delegate, 50, 1_000);
+    resolver.resolve("host");
+    Thread.sleep(80);
+    failure = new UnknownHostException("SERVFAIL");
+
+    assertEquals(ADDRESSES[0], resolver.resolve("host")[0]);
+    assertEquals(ADDRESSES[0], resolver.resolve("host")[0]);
+    assertEquals(2, lookups.get());
+  }
+
+  @Test
+  void keepsTheCauseOfCachedFailures() {
+    release.countDown();
+    CachingDnsResolver resolver = new CachingDnsResolver(delegate, 50, 1_000);
+    failure = new UnknownHostException("NXDOMAIN");
+
+    UnknownHostException first =
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("x"));
+    UnknownHostException second =
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("x"));
+
+    assertSame(failure, first.getCause());
+    assertSame(failure, second.getCause());
+    assertEquals(1, lookups.get());
+  }
+
+  private List<CompletableFuture<InetAddress[]>> resolveConcurrently(
+      CachingDnsResolver resolver, int callers) throws InterruptedException {
+    List<CompletableFuture<InetAddress[]>> results = new ArrayList<>();
+    for (int i = 0; i < callers; i++) {
+      results.add(
+          CompletableFuture.supplyAsync(
+              () -> {
+                try {
+                  return resolver.resolve("host");
+                } catch (UnknownHostException ex) {
+                  throw new CompletionException(ex);
+                }
+              }));
+    }
+    while (lookups.get() == 0) {
+      Thread.sleep(1);
+    }
+    // give the other callers time to find the lookup in flight
+    Thread.sleep(50);
+    return results;
+  }
+}
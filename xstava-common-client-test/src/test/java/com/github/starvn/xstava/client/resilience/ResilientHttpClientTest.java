@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.HttpRequestSpec;
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.service.DefaultHttpClient;
+import com.github.starvn.xstava.client.service.ForwardingHttpClient;
+import com.github.starvn.xstava.client.service.HttpClient;
+import com.github.starvn.xstava.client.test.StubHttpServer;
+import com.github.starvn.xstava.client.test.StubResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.hc.core5.http.ContentType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ResilientHttpClientTest {
+
+  private StubHttpServer server;
+  private DefaultHttpClient delegate;
+  private HttpProperties httpProperties;
+  private ResilienceProperties resilienceProperties;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new StubHttpServer().start();
+    httpProperties = new HttpProperties();
+    httpProperties.setAutomaticRetries(false);
+    delegate = new DefaultHttpClient(httpProperties);
+    resilienceProperties = new ResilienceProperties();
+    resilienceProperties.setRetryInitialBackoff(1L);
+    resilienceProperties.setRetryMaxBackoff(1L);
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    delegate.close();
+    server.close();
+  }
+
+  @Test
+  void retriesARepeatableBody() {
+    server.setDefaultResponse(new StubResponse(503, 0L, 0));
+    ResilientHttpClient client =
+        new ResilientHttpClient(delegate, httpProperties, resilienceProperties);
+
+    HttpResult result =
+        client.execute(
+            HttpRequestSpec.builder(HttpMethod.PUT, server.getUrl("/bytes"))
+                .body(bytes(), ContentType.TEXT_PLAIN)
+                .build());
+
+    assertEquals(503, result.getStatusCode());
+    assertEquals(3, server.getRequestCount());
+    assertEquals(2, client.getRetryCount());
+  }
+
+  @Test
+  void sendsAOneShotBodyOnlyOnce() {
+    server.setDefaultResponse(new StubResponse(503, 0L, 0));
+    ResilientHttpClient client =
+        new ResilientHttpClient(delegate, httpProperties, resilienceProperties);
+
+    HttpResult result =
+        client.execute(
+            HttpRequestSpec.builder(HttpMethod.PUT, server.getUrl("/stream"))
+                .body(new ByteArrayInputStream(bytes()), ContentType.TEXT_PLAIN)
+                .build());
+
+    assertEquals(503, result.getStatusCode());
+    assertEquals(1, server.getRequestCount());
+    assertEquals(0, client.getRetryCount());
+  }
+
+  @Test
+  void waitsAtLeastRetryAfter() {
+    server.setDefaultResponse(retryAfter("1"));
+    resilienceProperties.setRetryMaxAttempts(2);
+    resilienceProperties.setRetryMaxBackoff(2000L);
+    ResilientHttpClient client =
+        new ResilientHttpClient(delegate, httpProperties, resilienceProperties);
+
+    long start = System.nanoTime();
+    HttpResult result = client.query(HttpMethod.GET, server.getUrl("/later"), false);
+
+    assertEquals(503, result.getStatusCode());
+    assertEquals(2, server.getRequestCount());
+    assertTrue(System.nanoTime() - start >= TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test
+  void stopsWhenRetryAfterExceedsTheMaximumBackoff() {
+    server.setDefaultResponse(retryAfter("60"));
+    ResilientHttpClient client =
+        new ResilientHttpClient(delegate, httpProperties, resilienceProperties);
+
+    HttpResult result = client.query(HttpMethod.GET, server.getUrl("/much-later"), false);
+
+    assertEquals(503, result.getStatusCode());
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  void neverRetriesAHardTimeout() {
+    server.setDefaultResponse(new StubResponse(200, 1500L, 16));
+    ResilientHttpClient client =
+        new ResilientHttpClient(delegate, httpProperties, resilienceProperties);
+
+    long start = System.nanoTime();
+    HttpResult result = client.query(server.getUrl("/hang"), 1);
+
+    assertEquals(httpProperties.getDefaultHttpCode(), result.getStatusCode());
+    assertEquals(1, server.getRequestCount());
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1400));
+  }
+
+  @Test
+  void sharesTheDeadlineAcrossAttempts() {
+    server.setDefaultResponse(new StubResponse(503, 100L, 0));
+    resilienceProperties.setRetryMaxAttempts(10);
+    ResilientHttpClient client =
+        new ResilientHttpClient(delegate, httpProperties, resilienceProperties);
+
+    long start = System.nanoTime();
+    client.execute(
+        HttpRequestSpec.builder(HttpMethod.GET, server.getUrl("/deadline")).deadline(350).build());
+
+    assertTrue(server.getRequestCount() >= 2);
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+  }
+
+  @Test
+  void recoversFromHalfOpenAfterAThrownCall() throws InterruptedException {
+    resilienceProperties.setRetryMaxAttempts(1);
+    resilienceProperties.setCircuitWindowSize(2);
+    resilienceProperties.setCircuitMinimumCalls(2);
+    resilienceProperties.setCircuitOpenDuration(50L);
+    resilienceProperties.setCircuitHalfOpenCalls(1);
+    ThrowingHttpClient throwing = new ThrowingHttpClient(delegate);
+    ResilientHttpClient client =
+        new ResilientHttpClient(throwing, httpProperties, resilienceProperties);
+    String url = server.getUrl("/circuit");
+    CircuitBreaker circuitBreaker = client.getCircuitBreaker(url);
+
+    server.setDefaultResponse(new StubResponse(503, 0L, 0));
+    client.query(HttpMethod.GET, url, false);
+    client.query(HttpMethod.GET, url, false);
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+    Thread.sleep(100);
+    throwing.failNext.set(true);
+    assertThrows(IllegalStateException.class, () -> client.query(HttpMethod.GET, url, false));
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+    Thread.sleep(100);
+    server.setDefaultResponse(new StubResponse());
+    assertEquals(200, client.query(HttpMethod.GET, url, false).getStatusCode());
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  private static StubResponse retryAfter(String value) {
+    StubResponse response = new StubResponse(503, 0L, 0);
+    response.getHeaders().put("Retry-After", value);
+    return response;
+  }
+
+  private static byte[] bytes() {
+    return "payload".getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static class ThrowingHttpClient extends ForwardingHttpClient {
+
+    private final AtomicBoolean failNext = new AtomicBoolean();
+
+    ThrowingHttpClient(HttpClient delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public HttpResult query(HttpMethod method, String url, boolean allowRedirect) {
+      if (failNext.getAndSet(false)) {
+        throw new IllegalStateException("boom");
+      }
+      return super.query(method, url, allowRedirect);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.service.DefaultAsyncHttpClient;
+import com.github.starvn.xstava.client.service.DefaultHttpClient;
+import com.github.starvn.xstava.client.test.StubHttpServer;
+import com.github.starvn.xstava.client.test.StubResponse;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ThrottledHttpClientTest {
+
+  private StubHttpServer server;
+  private ResilienceProperties resilienceProperties;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new StubHttpServer().setDefaultResponse(new StubResponse(200, 300L, 16)).start();
+    resilienceProperties = new ResilienceProperties();
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.close();
+  }
+
+  @Test
+  void refundsTheTokenOfACallTheBulkheadRejects() throws IOException {
+    String url = server.getUrl("/refund");
+    try (ThrottledHttpClient client =
+        new ThrottledHttpClient(
+            new DefaultHttpClient(new HttpProperties()), resilienceProperties)) {
+      client.setRateLimit(url, 1, 2);
+      client.setBulkhead(url, 1, 0);
+
+      CompletableFuture<HttpResult> holder = client.submit(HttpMethod.GET, url, false, null);
+      while (client.getBulkheads().get(server.getUrl("")).getAvailablePermits() > 0) {
+        Thread.onSpinWait();
+      }
+      assertEquals(429, client.query(HttpMethod.GET, url, false).getStatusCode());
+      holder.join();
+
+      long start = System.nanoTime();
+      assertEquals(200, client.query(HttpMethod.GET, url, false).getStatusCode());
+      assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(600));
+    }
+  }
+
+  @Test
+  void releasesThePermitWhenTheCallCannotBeDispatched() throws IOException {
+    String url = server.getUrl("/closed");
+    ThrottledHttpClient client =
+        new ThrottledHttpClient(new DefaultHttpClient(new HttpProperties()), resilienceProperties);
+    client.setBulkhead(url, 1, 0);
+    client.close();
+
+    CompletableFuture<HttpResult> result = client.submit(HttpMethod.GET, url, false, null);
+
+    assertThrows(CompletionException.class, result::join);
+    assertEquals(1, client.getBulkheads().values().iterator().next().getAvailablePermits());
+  }
+
+  @Test
+  void throttlesTheAsyncClient() throws IOException {
+    String url = server.getUrl("/async");
+    try (ThrottledAsyncHttpClient client =
+        new ThrottledAsyncHttpClient(
+            new DefaultAsyncHttpClient(new HttpProperties()), resilienceProperties)) {
+      client.setBulkhead(url, 1, 0);
+
+      CompletableFuture<HttpResult> first = client.query(HttpMethod.GET, url, false);
+      CompletableFuture<HttpResult> second = client.query(HttpMethod.GET, url, false);
+
+      assertEquals(429, second.join().getStatusCode());
+      assertEquals(200, first.join().getStatusCode());
+      assertEquals(1, client.getRejectedCount());
+      assertEquals(1, client.getBulkheads().values().iterator().next().getAvailablePermits());
+    }
+  }
+}
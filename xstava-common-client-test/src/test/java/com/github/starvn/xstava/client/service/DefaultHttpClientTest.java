@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.test.StubHttpServer;
+import com.github.starvn.xstava.client.test.StubResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class DefaultHttpClientTest {
+
+  @Test
+  void saturatedRoutesDoNotHoldUpOtherRoutes() throws IOException {
+    HttpProperties httpProperties = new HttpProperties();
+    httpProperties.setMaxConnTotal(2);
+    httpProperties.setMaxConcurrentPerRoute(1);
+    try (StubHttpServer slow =
+            new StubHttpServer().setDefaultResponse(new StubResponse(200, 500L, 16)).start();
+        StubHttpServer fast = new StubHttpServer().start();
+        DefaultHttpClient client = new DefaultHttpClient(httpProperties)) {
+      List<CompletableFuture<HttpResult>> queued = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        queued.add(client.submit(HttpMethod.GET, slow.getUrl("/slow"), false, null));
+      }
+
+      long start = System.nanoTime();
+      HttpResult result = client.submit(HttpMethod.GET, fast.getUrl("/fast"), false, null).join();
+
+      assertEquals(200, result.getStatusCode());
+      assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(400));
+      queued.forEach(future -> future.cancel(true));
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.HttpResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileDownloaderTest {
+
+  private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] CHANGED = "ABCDEFGHIJ".getBytes(StandardCharsets.US_ASCII);
+
+  @TempDir Path folder;
+
+  private HttpServer server;
+  private DefaultHttpClient client;
+  private volatile String etag;
+  private volatile String nextEtag;
+  private volatile byte[] content = CONTENT;
+  private volatile boolean ignoreRange;
+  private final List<String> ranges = new CopyOnWriteArrayList<>();
+  private final List<Integer> statuses = new CopyOnWriteArrayList<>();
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/file", this::handle);
+    server.start();
+    client = new DefaultHttpClient(new HttpProperties());
+    etag = "\"v1\"";
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    client.close();
+    server.stop(0);
+  }
+
+  @Test
+  void resumesWhenTheStoredValidatorStillMatches() throws IOException {
+    Path path = partial("0123", "\"v1\"");
+
+    HttpResult result = client.download(url(), path.toString());
+
+    assertEquals(200, result.getStatusCode());
+    assertEquals(List.of("bytes=4-"), ranges);
+    assertEquals(List.of(206), statuses);
+    assertArrayEquals(CONTENT, Files.readAllBytes(path));
+    assertFalse(Files.exists(sidecar(path)));
+  }
+
+  @Test
+  void restartsWhenTheResourceChangedSinceThePartialWrite() throws IOException {
+    etag = "\"v2\"";
+    Path path = partial("AAAA", "\"v1\"");
+
+    HttpResult result = client.download(url(), path.toString());
+
+    assertEquals(200, result.getStatusCode());
+    assertEquals(List.of("bytes=4-"), ranges);
+    assertEquals(List.of(200), statuses);
+    assertArrayEquals(CONTENT, Files.readAllBytes(path));
+    assertFalse(Files.exists(sidecar(path)));
+  }
+
+  @Test
+  void restartsWithoutAStoredValidator() throws IOException {
+    Path path = partial("AAAA", null);
+
+    HttpResult result = client.download(url(), path.toString());
+
+    assertEquals(200, result.getStatusCode());
+    assertEquals(List.of(), ranges);
+    assertArrayEquals(CONTENT, Files.readAllBytes(path));
+  }
+
+  @Test
+  void downloadsRangesInParallel() throws IOException {
+    Path path = folder.resolve("file.bin");
+
+    HttpResult result = parallel(path);
+
+    assertEquals(200, result.getStatusCode());
+    assertEquals(List.of(206, 206), statuses);
+    assertArrayEquals(CONTENT, Files.readAllBytes(path));
+  }
+
+  @Test
+  void failsParallelRangesWhenTheResourceChangesAfterTheProbe() throws IOException {
+    nextEtag = "\"v2\"";
+    Path path = folder.resolve("file.bin");
+
+    HttpResult result = parallel(path);
+
+    assertEquals(500, result.getStatusCode());
+    assertFalse(Files.readString(path).chars().anyMatch(Character::isUpperCase));
+  }
+
+  @Test
+  void failsParallelRangesWhenTheServerIgnoresRange() throws IOException {
+    ignoreRange = true;
+    Path path = folder.resolve("file.bin");
+
+    HttpResult result = parallel(path);
+
+    assertEquals(500, result.getStatusCode());
+  }
+
+  private HttpResult parallel(Path path) throws IOException {
+    HttpProperties httpProperties = new HttpProperties();
+    httpProperties.setDownloadParallelism(2);
+    httpProperties.setDownloadParallelThreshold(1L);
+    httpProperties.setDownloadMaxAttempts(1);
+    try (DefaultHttpClient parallelClient = new DefaultHttpClient(httpProperties)) {
+      return parallelClient.download(url(), path.toString());
+    }
+  }
+
+  private Path partial(String content, String validator) throws IOException {
+    Path path = folder.resolve("file.bin");
+    Files.writeString(path, content, StandardCharsets.US_ASCII);
+    if (validator != null) {
+      Files.writeString(sidecar(path), validator, StandardCharsets.US_ASCII);
+    }
+    return path;
+  }
+
+  private Path sidecar(Path path) {
+    return path.resolveSibling(path.getFileName() + ".part");
+  }
+
+  private String url() {
+    return "http://"
+        + server.getAddress().getHostString()
+        + ":"
+        + server.getAddress().getPort()
+        + "/file";
+  }
+
+  /** Serves the current content with byte ranges, answering If-Range like a real origin. */
+  private void handle(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+    exchange.getResponseHeaders().set("ETag", etag);
+    if ("HEAD".equals(exchange.getRequestMethod())) {
+      exchange.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+      if (nextEtag != null) {
+        etag = nextEtag;
+        content = CHANGED;
+      }
+      return;
+    }
+
+    byte[] body = content;
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+    int start = 0;
+    int end = body.length - 1;
+    boolean partial = false;
+    if (range != null) {
+      ranges.add(range);
+      if (!ignoreRange && (ifRange == null || ifRange.equals(etag))) {
+        String[] bounds = range.substring("bytes=".length()).split("-", -1);
+        start = Integer.parseInt(bounds[0]);
+        end = bounds[1].isEmpty() ? end : Integer.parseInt(bounds[1]);
+        partial = true;
+      }
+    }
+
+    if (partial) {
+      exchange
+          .getResponseHeaders()
+          .set("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+    }
+    int status = partial ? 206 : 200;
+    statuses.add(status);
+    exchange.sendResponseHeaders(status, end + 1 - start);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body, start, end + 1 - start);
+    }
+  }
+}
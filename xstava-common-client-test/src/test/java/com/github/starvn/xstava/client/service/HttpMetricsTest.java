@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.metrics.HttpRequestMetrics;
+import com.github.starvn.xstava.client.test.StubHttpServer;
+import com.github.starvn.xstava.client.test.StubResponse;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HttpMetricsTest {
+
+  @TempDir Path folder;
+
+  private final List<HttpRequestMetrics> published = new CopyOnWriteArrayList<>();
+  private StubHttpServer server;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new StubHttpServer().setDefaultResponse(new StubResponse(200, 0L, 1024)).start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.close();
+  }
+
+  @Test
+  void publishesTheRequestsOfADownload() {
+    try (DefaultHttpClient client = new DefaultHttpClient(new HttpProperties())) {
+      client.addMetricsListener(published::add);
+
+      client.download(server.getUrl("/file"), folder.resolve("file").toString());
+    }
+
+    assertTrue(published.size() >= 2);
+    HttpRequestMetrics get = published.get(published.size() - 1);
+    assertEquals("download", get.getOperation());
+    assertEquals("GET", get.getMethod());
+    assertEquals(200, get.getStatusCode());
+    assertEquals(1024, get.getBytesReceived());
+    assertEquals("HEAD", published.get(0).getMethod());
+  }
+
+  @Test
+  void publishesTheRequestsOfTheAsyncClient() {
+    try (DefaultAsyncHttpClient client = new DefaultAsyncHttpClient(new HttpProperties())) {
+      client.addMetricsListener(published::add);
+
+      client.query(HttpMethod.GET, server.getUrl("/async"), false).join();
+      // published by a completion stage that may run after join returns
+      long deadline = System.currentTimeMillis() + 1000;
+      while (published.isEmpty() && System.currentTimeMillis() < deadline) {
+        Thread.onSpinWait();
+      }
+    }
+
+    assertEquals(1, published.size());
+    HttpRequestMetrics metrics = published.get(0);
+    assertEquals("query", metrics.getOperation());
+    assertEquals("GET", metrics.getMethod());
+    assertEquals(server.getUrl(""), metrics.getRoute());
+    assertEquals(200, metrics.getStatusCode());
+    assertEquals(1024, metrics.getBytesReceived());
+    assertNull(metrics.getErrorClass());
+    assertTrue(metrics.getTimeToFirstByteNanos() > 0);
+    assertTrue(metrics.getTotalNanos() >= metrics.getTimeToFirstByteNanos());
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.test.StubHttpServer;
+import com.github.starvn.xstava.client.test.StubResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightHttpClientTest {
+
+  private StubHttpServer server;
+  private DefaultHttpClient delegate;
+  private SingleFlightHttpClient client;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    server = new StubHttpServer().setDefaultResponse(new StubResponse(200, 300L, 16)).start();
+    delegate = new DefaultHttpClient(new HttpProperties());
+    client = new SingleFlightHttpClient(delegate, List.of("X-Tenant"));
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    delegate.close();
+    server.close();
+  }
+
+  @Test
+  void coalescesIdenticalRequests() {
+    concurrently(
+        Map.of("X-Tenant", "a", "Authorization", "Bearer 1"),
+        Map.of("X-Tenant", "a", "Authorization", "Bearer 1"));
+
+    assertEquals(1, server.getRequestCount());
+    assertEquals(1, client.getCoalescedCount());
+  }
+
+  @Test
+  void keepsCredentialsApartOutsideTheKeyHeaders() {
+    concurrently(
+        Map.of("X-Tenant", "a", "Authorization", "Bearer 1"),
+        Map.of("X-Tenant", "a", "Authorization", "Bearer 2"));
+
+    assertEquals(2, server.getRequestCount());
+    assertEquals(0, client.getCoalescedCount());
+  }
+
+  @Test
+  void keepsCookiesApartOutsideTheKeyHeaders() {
+    concurrently(
+        Map.of("X-Tenant", "a", "Cookie", "session=1"),
+        Map.of("X-Tenant", "a", "Cookie", "session=2"));
+
+    assertEquals(2, server.getRequestCount());
+    assertEquals(0, client.getCoalescedCount());
+  }
+
+  private void concurrently(Map<String, String> first, Map<String, String> second) {
+    String url = server.getUrl("/flight");
+    CompletableFuture<?> leader =
+        CompletableFuture.runAsync(() -> client.query(HttpMethod.GET, url, false, first));
+    while (client.getInFlightCount() == 0) {
+      Thread.onSpinWait();
+    }
+    client.query(HttpMethod.GET, url, false, second);
+    leader.join();
+  }
+}
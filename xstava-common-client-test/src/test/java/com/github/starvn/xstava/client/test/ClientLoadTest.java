@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.test;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.service.DefaultHttpClient;
+import java.io.IOException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs {@link DefaultHttpClient} against a local {@link StubHttpServer}, configured with system
+ * properties, e.g. {@code mvn -pl xstava-common-client-test -am -Pload-test verify -Dconcurrency=64
+ * -DmaxConnPerRoute=32 -Dlatency=20 -DsocketTimeout=500}.
+ */
+@Slf4j
+public class ClientLoadTest {
+
+  public static void main(String[] args) throws IOException {
+    int concurrency = Integer.getInteger("concurrency", 32);
+    int requests = Integer.getInteger("requests", 10000);
+
+    StubResponse response =
+        new StubResponse(200, Long.getLong("latency", 5L), Integer.getInteger("payloadSize", 1024));
+    response.setLatencyJitter(Long.getLong("latencyJitter", 0L));
+    response.setChunked(Boolean.getBoolean("chunked"));
+    response.setDripBytesPerSecond(Integer.getInteger("dripBytesPerSecond", 0));
+    response.setFailureRate(Double.parseDouble(System.getProperty("failureRate", "0")));
+    response.setFailureMode(FailureMode.valueOf(System.getProperty("failureMode", "ERROR_STATUS")));
+
+    HttpProperties httpProperties = new HttpProperties();
+    int maxConnPerRoute =
+        Integer.getInteger("maxConnPerRoute", httpProperties.getMaxConnPerRoute());
+    httpProperties.setMaxConnPerRoute(maxConnPerRoute);
+    httpProperties.setMaxConcurrentPerRoute(maxConnPerRoute);
+    httpProperties.setSocketTimeout(
+        Integer.getInteger("socketTimeout", httpProperties.getSocketTimeout()));
+    httpProperties.setConnectRequestTimeout(
+        Integer.getInteger("connectRequestTimeout", httpProperties.getConnectRequestTimeout()));
+
+    try (StubHttpServer server = new StubHttpServer().setDefaultResponse(response).start();
+        DefaultHttpClient client = new DefaultHttpClient(httpProperties)) {
+      String url = server.getUrl("/load");
+      LoadDriver driver =
+          new LoadDriver("DefaultHttpClient", concurrency, Math.min(requests, concurrency * 2));
+      server.resetCounters();
+      LoadReport report = driver.run(requests, () -> client.query(HttpMethod.GET, url, false));
+      log.info("(main) {}", report.toSummary());
+      log.info(
+          "(main) server max concurrency: {}|injected failures: {}|pool: {}",
+          server.getMaxActiveCount(),
+          server.getFailureCount(),
+          client.getPoolStats());
+    }
+  }
+}
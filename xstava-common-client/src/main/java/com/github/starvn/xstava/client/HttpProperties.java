@@ -16,10 +16,11 @@
 
 package com.github.starvn.xstava.client;
 
-import lombok.AllArgsConstructor;
+import java.util.ArrayList;
+import java.util.List;
 import lombok.Data;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
 
-@AllArgsConstructor
 @Data
 public class HttpProperties {
 
@@ -27,11 +28,47 @@ public class HttpProperties {
   private Integer connectTimeout;
   private Integer connectRequestTimeout;
   private Integer defaultHttpCode;
+  private Integer maxConnTotal;
+  private Integer maxConnPerRoute;
+  private Long connectionTimeToLive;
+  private Long evictIdleTime;
+  private Integer validateAfterInactivity;
+  private HttpVersionPolicy httpVersionPolicy;
+  private Integer ioThreadCount;
+  private Integer maxConcurrentPerRoute;
+  private Integer downloadBufferSize;
+  private Integer downloadParallelism;
+  private Long downloadParallelThreshold;
+  private Integer downloadMaxAttempts;
+  private Long requestDeadline;
+  private Boolean automaticRetries;
+  private Boolean contentCompression;
+  private List<String> acceptEncodings;
+  private Integer requestCompressionThreshold;
+  private Boolean cacheEnabled;
+  private Integer cacheMaxEntries;
+  private Long cacheMaxObjectSize;
+  private Integer cacheDiskMaxEntries;
+  private String cacheDirectory;
+  private Long dnsCacheTtl;
+  private Long dnsNegativeCacheTtl;
 
   public HttpProperties() {
     this.init();
   }
 
+  public HttpProperties(
+      Integer socketTimeout,
+      Integer connectTimeout,
+      Integer connectRequestTimeout,
+      Integer defaultHttpCode) {
+    this.socketTimeout = socketTimeout;
+    this.connectTimeout = connectTimeout;
+    this.connectRequestTimeout = connectRequestTimeout;
+    this.defaultHttpCode = defaultHttpCode;
+    this.init();
+  }
+
   private void init() {
     if (this.socketTimeout == null) {
       this.socketTimeout = 30000;
@@ -48,5 +85,97 @@ public class HttpProperties {
     if (this.defaultHttpCode == null) {
       this.defaultHttpCode = 500;
     }
+
+    if (this.maxConnTotal == null) {
+      this.maxConnTotal = 200;
+    }
+
+    if (this.maxConnPerRoute == null) {
+      this.maxConnPerRoute = 20;
+    }
+
+    if (this.connectionTimeToLive == null) {
+      this.connectionTimeToLive = 300000L;
+    }
+
+    if (this.evictIdleTime == null) {
+      this.evictIdleTime = 60000L;
+    }
+
+    if (this.validateAfterInactivity == null) {
+      this.validateAfterInactivity = 2000;
+    }
+
+    if (this.httpVersionPolicy == null) {
+      this.httpVersionPolicy = HttpVersionPolicy.NEGOTIATE;
+    }
+
+    if (this.ioThreadCount == null) {
+      this.ioThreadCount = Runtime.getRuntime().availableProcessors();
+    }
+
+    if (this.maxConcurrentPerRoute == null) {
+      this.maxConcurrentPerRoute = this.maxConnPerRoute;
+    }
+
+    if (this.downloadBufferSize == null) {
+      this.downloadBufferSize = 1024 * 1024;
+    }
+
+    if (this.downloadParallelism == null) {
+      this.downloadParallelism = 4;
+    }
+
+    if (this.downloadParallelThreshold == null) {
+      this.downloadParallelThreshold = 64L * 1024 * 1024;
+    }
+
+    if (this.downloadMaxAttempts == null) {
+      this.downloadMaxAttempts = 3;
+    }
+
+    if (this.requestDeadline == null) {
+      this.requestDeadline = 0L;
+    }
+
+    if (this.automaticRetries == null) {
+      this.automaticRetries = true;
+    }
+
+    if (this.contentCompression == null) {
+      this.contentCompression = true;
+    }
+
+    if (this.acceptEncodings == null) {
+      this.acceptEncodings = new ArrayList<>(List.of("gzip", "x-gzip", "deflate", "br"));
+    }
+
+    if (this.requestCompressionThreshold == null) {
+      this.requestCompressionThreshold = 0;
+    }
+
+    if (this.cacheEnabled == null) {
+      this.cacheEnabled = false;
+    }
+
+    if (this.cacheMaxEntries == null) {
+      this.cacheMaxEntries = 1000;
+    }
+
+    if (this.cacheMaxObjectSize == null) {
+      this.cacheMaxObjectSize = 1024L * 1024;
+    }
+
+    if (this.cacheDiskMaxEntries == null) {
+      this.cacheDiskMaxEntries = 10000;
+    }
+
+    if (this.dnsCacheTtl == null) {
+      this.dnsCacheTtl = 0L;
+    }
+
+    if (this.dnsNegativeCacheTtl == null) {
+      this.dnsNegativeCacheTtl = 0L;
+    }
   }
 }
@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpMessage;
+import org.apache.hc.core5.http.NameValuePair;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityTemplate;
+import org.apache.hc.core5.http.io.entity.InputStreamEntity;
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.apache.hc.core5.http.message.BasicNameValuePair;
+import org.apache.hc.core5.net.WWWFormCodec;
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * Immutable request description. Headers, the authorization header, the uri and byte bodies are
+ * computed once in {@link Builder#build()}, so a spec prepared at startup can be executed many
+ * times with little per-call work. Specs with an {@link InputStream} body can only be sent once:
+ * they are not {@link #isRepeatable() repeatable}, so they are not retried or redirected with a
+ * body.
+ */
+public final class HttpRequestSpec {
+
+  private static final Header[] NO_HEADERS = new Header[0];
+
+  private final HttpMethod method;
+  private final String methodName;
+  private final String url;
+  private final URI uri;
+  private final boolean allowRedirect;
+  private final Header[] headers;
+  private final byte[] bodyBytes;
+  private final Supplier<InputStream> bodySupplier;
+  private final InputStream bodyStream;
+  private final long bodyLength;
+  private final ContentType contentType;
+  private final Timeout responseTimeout;
+  private final Timeout connectionRequestTimeout;
+  private final long deadline;
+  private volatile ResolvedConfig resolvedConfig;
+
+  private HttpRequestSpec(Builder builder, String url, URI uri) {
+    this.method = builder.method;
+    this.methodName = builder.method == HttpMethod.PATH ? "PATCH" : builder.method.name();
+    this.url = url;
+    this.uri = uri;
+    this.allowRedirect = builder.allowRedirect;
+    this.headers = builder.headers.isEmpty() ? NO_HEADERS : builder.headers.toArray(NO_HEADERS);
+    this.bodyBytes = builder.bodyBytes;
+    this.bodySupplier = builder.bodySupplier;
+    this.bodyStream = builder.bodyStream;
+    this.bodyLength = builder.bodyLength;
+    this.contentType = builder.contentType;
+    this.responseTimeout = builder.responseTimeout;
+    this.connectionRequestTimeout = builder.connectionRequestTimeout;
+    this.deadline = builder.deadline;
+  }
+
+  public static Builder builder(HttpMethod method, String url) {
+    return new Builder(method, url);
+  }
+
+  public HttpMethod getMethod() {
+    return method;
+  }
+
+  public String getMethodName() {
+    return methodName;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public URI getUri() {
+    return uri;
+  }
+
+  public boolean isAllowRedirect() {
+    return allowRedirect;
+  }
+
+  public Header[] getHeaders() {
+    return headers.clone();
+  }
+
+  public boolean hasBody() {
+    return bodyBytes != null || bodySupplier != null || bodyStream != null;
+  }
+
+  /** False when the body is a one-shot {@link InputStream} that cannot be sent again. */
+  public boolean isRepeatable() {
+    return bodyStream == null;
+  }
+
+  /** Deadline in milliseconds, or a negative value to use the client's default. */
+  public long getDeadline() {
+    return deadline;
+  }
+
+  /** Returns a copy sending the same request to another url, sharing everything else. */
+  public HttpRequestSpec withUrl(String url) {
+    return new HttpRequestSpec(toBuilder(), url, URI.create(url));
+  }
+
+  public Builder toBuilder() {
+    Builder builder = new Builder(method, url);
+    builder.allowRedirect = allowRedirect;
+    builder.headers.addAll(List.of(headers));
+    builder.bodyBytes = bodyBytes;
+    builder.bodySupplier = bodySupplier;
+    builder.bodyStream = bodyStream;
+    builder.bodyLength = bodyLength;
+    builder.contentType = contentType;
+    builder.responseTimeout = responseTimeout;
+    builder.connectionRequestTimeout = connectionRequestTimeout;
+    builder.deadline = deadline;
+    return builder;
+  }
+
+  public void applyHeaders(HttpMessage message) {
+    for (Header header : headers) {
+      message.addHeader(header);
+    }
+  }
+
+  public HttpEntity createEntity() {
+    if (bodyBytes != null) {
+      return new ByteArrayEntity(bodyBytes, contentType);
+    }
+    if (bodySupplier != null) {
+      return new EntityTemplate(
+          bodyLength,
+          contentType,
+          null,
+          outputStream -> {
+            try (InputStream inputStream = bodySupplier.get()) {
+              inputStream.transferTo(outputStream);
+            }
+          });
+    }
+    if (bodyStream != null) {
+      return new InputStreamEntity(bodyStream, bodyLength, contentType);
+    }
+    return null;
+  }
+
+  /**
+   * Applies the per-request timeouts on top of the client's config. The result is remembered for
+   * the last base config, which the client keeps as a constant.
+   */
+  public RequestConfig resolveConfig(RequestConfig base) {
+    if (responseTimeout == null && connectionRequestTimeout == null) {
+      return base;
+    }
+
+    ResolvedConfig resolved = resolvedConfig;
+    if (resolved == null || resolved.base != base) {
+      RequestConfig.Builder builder = RequestConfig.copy(base);
+      if (responseTimeout != null) {
+        builder.setResponseTimeout(responseTimeout);
+      }
+      if (connectionRequestTimeout != null) {
+        builder.setConnectionRequestTimeout(connectionRequestTimeout);
+      }
+      resolved = new ResolvedConfig(base, builder.build());
+      resolvedConfig = resolved;
+    }
+    return resolved.config;
+  }
+
+  @Override
+  public String toString() {
+    return "HttpRequestSpec(" + methodName + " " + url + ")";
+  }
+
+  private static final class ResolvedConfig {
+    private final RequestConfig base;
+    private final RequestConfig config;
+
+    private ResolvedConfig(RequestConfig base, RequestConfig config) {
+      this.base = base;
+      this.config = config;
+    }
+  }
+
+  public static final class Builder {
+
+    private final HttpMethod method;
+    private final String url;
+    private final List<Header> headers;
+    private boolean allowRedirect;
+    private byte[] bodyBytes;
+    private Supplier<InputStream> bodySupplier;
+    private InputStream bodyStream;
+    private long bodyLength = -1;
+    private ContentType contentType;
+    private Timeout responseTimeout;
+    private Timeout connectionRequestTimeout;
+    private long deadline = -1;
+
+    private Builder(HttpMethod method, String url) {
+      this.method = method;
+      this.url = url;
+      this.headers = new ArrayList<>();
+    }
+
+    public Builder allowRedirect(boolean allowRedirect) {
+      this.allowRedirect = allowRedirect;
+      return this;
+    }
+
+    public Builder header(String name, String value) {
+      headers.removeIf(header -> header.getName().equalsIgnoreCase(name));
+      headers.add(new BasicHeader(name, value));
+      return this;
+    }
+
+    public Builder headers(Map<String, String> headers) {
+      if (headers != null) {
+        headers.forEach(this::header);
+      }
+      return this;
+    }
+
+    public Builder basicAuth(String username, String password) {
+      String credentials = username + ":" + password;
+      return header(
+          HttpHeaders.AUTHORIZATION,
+          "Basic "
+              + Base64.getEncoder()
+                  .encodeToString(credentials.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    public Builder bearerAuth(String token) {
+      return header(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+    }
+
+    /** Copies {@code body}, so later changes to the array do not reach the spec. */
+    public Builder body(byte[] body, ContentType contentType) {
+      return bytes(body.clone(), contentType);
+    }
+
+    public Builder body(String body, ContentType contentType) {
+      return bytes(
+          body.getBytes(
+              contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8),
+          contentType);
+    }
+
+    /** Repeatable streamed body; {@code body} is asked for a new stream on every send. */
+    public Builder body(Supplier<InputStream> body, long length, ContentType contentType) {
+      this.bodyBytes = null;
+      this.bodySupplier = body;
+      this.bodyStream = null;
+      this.bodyLength = length;
+      this.contentType = contentType;
+      return this;
+    }
+
+    /** One-shot streamed body; the spec can be sent only once. */
+    public Builder body(InputStream body, ContentType contentType) {
+      this.bodyBytes = null;
+      this.bodySupplier = null;
+      this.bodyStream = body;
+      this.bodyLength = -1;
+      this.contentType = contentType;
+      return this;
+    }
+
+    private Builder bytes(byte[] body, ContentType contentType) {
+      this.bodyBytes = body;
+      this.bodySupplier = null;
+      this.bodyStream = null;
+      this.contentType = contentType;
+      return this;
+    }
+
+    public Builder form(Map<String, String> params) {
+      List<NameValuePair> parameters = new ArrayList<>(params.size());
+      params.forEach((name, value) -> parameters.add(new BasicNameValuePair(name, value)));
+      return body(
+          WWWFormCodec.format(parameters, StandardCharsets.UTF_8),
+          ContentType.APPLICATION_FORM_URLENCODED.withCharset(StandardCharsets.UTF_8));
+    }
+
+    public Builder responseTimeout(long millis) {
+      this.responseTimeout = Timeout.ofMilliseconds(millis);
+      return this;
+    }
+
+    public Builder connectionRequestTimeout(long millis) {
+      this.connectionRequestTimeout = Timeout.ofMilliseconds(millis);
+      return this;
+    }
+
+    public Builder deadline(long millis) {
+      this.deadline = millis;
+      return this;
+    }
+
+    public HttpRequestSpec build() {
+      return new HttpRequestSpec(this, url, URI.create(url));
+    }
+  }
+}
@@ -18,11 +18,13 @@ package com.github.starvn.xstava.client;
 
 import com.google.common.collect.Multimap;
 import lombok.Data;
+import lombok.ToString;
 
 @Data
 public class HttpResult {
 
   private String body;
+  @ToString.Exclude private byte[] content;
   private Integer statusCode;
   private Multimap<String, String> headers;
 
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Result whose 2xx body was decoded into {@code value}; other bodies are kept in {@code body}. When
+ * a 2xx body cannot be decoded, the status is kept and the reason is reported in {@code
+ * decodeError}.
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class TypedHttpResult<T> extends HttpResult {
+
+  private T value;
+  private String decodeError;
+
+  public TypedHttpResult(Integer statusCode) {
+    super(statusCode);
+  }
+}
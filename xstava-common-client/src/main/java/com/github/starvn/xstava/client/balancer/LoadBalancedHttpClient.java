@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.balancer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.HttpRequestSpec;
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.TypedHttpResult;
+import com.github.starvn.xstava.client.handler.HttpResponseConsumer;
+import com.github.starvn.xstava.client.handler.UploadProgressListener;
+import com.github.starvn.xstava.client.service.ForwardingHttpClient;
+import com.github.starvn.xstava.client.service.HttpClient;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.cookie.BasicCookieStore;
+import org.apache.hc.core5.http.HttpStatus;
+
+/**
+ * Resolves {@code lb://service/path} urls to one endpoint of a registered service and tracks the
+ * outcome for passive ejection; other urls pass through. Every endpoint is a separate route, so
+ * {@code DefaultHttpClient} keeps a separate connection pool for each one, sized with {@code
+ * setMaxConnectionsPerRoute}.
+ */
+@Slf4j
+public class LoadBalancedHttpClient extends ForwardingHttpClient {
+
+  public static final String SCHEME = "lb://";
+
+  private final LoadBalancerProperties loadBalancerProperties;
+  private final int defaultHttpCode;
+  private final ConcurrentMap<String, LoadBalancer> loadBalancers;
+
+  public LoadBalancedHttpClient(
+      HttpClient delegate,
+      HttpProperties httpProperties,
+      LoadBalancerProperties loadBalancerProperties) {
+    super(delegate);
+    this.loadBalancerProperties = loadBalancerProperties;
+    this.defaultHttpCode = httpProperties.getDefaultHttpCode();
+    this.loadBalancers = new ConcurrentHashMap<>();
+  }
+
+  public LoadBalancer registerService(String service, List<String> endpoints) {
+    return registerService(service, endpoints, loadBalancerProperties.getStrategy());
+  }
+
+  public LoadBalancer registerService(
+      String service, List<String> endpoints, LoadBalancingStrategy strategy) {
+    LoadBalancer loadBalancer = new LoadBalancer(service, endpoints, strategy);
+    loadBalancers.put(service, loadBalancer);
+    return loadBalancer;
+  }
+
+  public void unregisterService(String service) {
+    loadBalancers.remove(service);
+  }
+
+  public Map<String, LoadBalancer> getLoadBalancers() {
+    return Collections.unmodifiableMap(loadBalancers);
+  }
+
+  @Override
+  public HttpResult download(String url, String storageFolder) {
+    return balance(url, target -> delegate.download(target, storageFolder));
+  }
+
+  @Override
+  public HttpResult post(String url, Map<String, String> headers, String entity) {
+    return balance(url, target -> delegate.post(target, headers, entity));
+  }
+
+  @Override
+  public HttpResult post(String url, Map<String, String> headers, Map<String, String> params) {
+    return balance(url, target -> delegate.post(target, headers, params));
+  }
+
+  @Override
+  public HttpResult query(HttpMethod method, String url, boolean allowRedirect) {
+    return balance(url, target -> delegate.query(method, target, allowRedirect));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    return balance(url, target -> delegate.query(method, target, allowRedirect, headers));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params) {
+    return balance(url, target -> delegate.query(method, target, allowRedirect, headers, params));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      String entity) {
+    return balance(url, target -> delegate.query(method, target, allowRedirect, headers, entity));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params,
+      String entity,
+      boolean isUseBasicAuthentication,
+      String username,
+      String password,
+      BasicCookieStore cookieStore) {
+    return balance(
+        url,
+        target ->
+            delegate.query(
+                method,
+                target,
+                allowRedirect,
+                headers,
+                params,
+                entity,
+                isUseBasicAuthentication,
+                username,
+                password,
+                cookieStore));
+  }
+
+  @Override
+  public HttpResult execute(HttpRequestSpec spec) {
+    return balance(
+        spec.getUrl(),
+        target -> delegate.execute(target.equals(spec.getUrl()) ? spec : spec.withUrl(target)));
+  }
+
+  @Override
+  public HttpResult queryForBytes(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    return balance(url, target -> delegate.queryForBytes(method, target, allowRedirect, headers));
+  }
+
+  @Override
+  public <T> T stream(
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      String entity,
+      HttpResponseConsumer<T> consumer) {
+    // the result says nothing about the response, so judge it by the status the consumer saw; a
+    // consumer that never returns means the exchange failed
+    AtomicInteger statusCode = new AtomicInteger(-1);
+    HttpResponseConsumer<T> recording =
+        (code, responseHeaders, body) -> {
+          T value = consumer.consume(code, responseHeaders, body);
+          statusCode.set(code);
+          return value;
+        };
+    return balance(
+        url,
+        target -> delegate.stream(method, target, headers, entity, recording),
+        result -> isFailure(statusCode.get()),
+        () -> null);
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, Class<T> type) {
+    return typedBalance(url, target -> delegate.query(method, target, headers, type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, TypeReference<T> type) {
+    return typedBalance(url, target -> delegate.query(method, target, headers, type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> exchange(
+      HttpMethod method, String url, Map<String, String> headers, Object body, Class<T> type) {
+    return typedBalance(url, target -> delegate.exchange(method, target, headers, body, type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> exchange(
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      Object body,
+      TypeReference<T> type) {
+    return typedBalance(url, target -> delegate.exchange(method, target, headers, body, type));
+  }
+
+  @Override
+  public HttpResult query(String url, int hardTimeout) {
+    return balance(url, target -> delegate.query(target, hardTimeout));
+  }
+
+  @Override
+  public HttpResult query(String url, int hardTimeout, boolean isLazy) {
+    return balance(url, target -> delegate.query(target, hardTimeout, isLazy));
+  }
+
+  @Override
+  public HttpResult upload(
+      String url, Map<String, String> headers, Map<String, String> params, String filepath) {
+    return balance(url, target -> delegate.upload(target, headers, params, filepath));
+  }
+
+  @Override
+  public HttpResult upload(
+      String url,
+      Map<String, String> headers,
+      Map<String, String> params,
+      Map<String, String> files,
+      UploadProgressListener listener) {
+    return balance(url, target -> delegate.upload(target, headers, params, files, listener));
+  }
+
+  private HttpResult balance(String url, Function<String, HttpResult> call) {
+    return balance(url, call, this::isFailure, () -> new HttpResult(defaultHttpCode));
+  }
+
+  private <T> TypedHttpResult<T> typedBalance(
+      String url, Function<String, TypedHttpResult<T>> call) {
+    return balance(url, call, this::isFailure, () -> new TypedHttpResult<>(defaultHttpCode));
+  }
+
+  private <T> T balance(
+      String url, Function<String, T> call, Predicate<T> isFailure, Supplier<T> fallback) {
+    if (!url.startsWith(SCHEME)) {
+      return call.apply(url);
+    }
+
+    int end = SCHEME.length();
+    while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+      end++;
+    }
+    String service = url.substring(SCHEME.length(), end);
+    LoadBalancer loadBalancer = loadBalancers.get(service);
+    if (loadBalancer == null) {
+      log.error("(balance) url: {}|unknown service {}", url, service);
+      return fallback.get();
+    }
+
+    ServiceEndpoint endpoint = loadBalancer.choose();
+    endpoint.onStart();
+    boolean failed = true;
+    try {
+      T result = call.apply(endpoint.getUrl() + url.substring(end));
+      failed = isFailure.test(result);
+      return result;
+    } finally {
+      endpoint.onComplete(failed, loadBalancerProperties);
+    }
+  }
+
+  private boolean isFailure(HttpResult result) {
+    return result == null || result.getStatusCode() == null || isFailure(result.getStatusCode());
+  }
+
+  private boolean isFailure(int statusCode) {
+    return statusCode < 0
+        || statusCode == defaultHttpCode
+        || statusCode >= HttpStatus.SC_SERVER_ERROR;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.balancer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses an endpoint of one logical service. Ejected endpoints are skipped; when every endpoint is
+ * ejected, all of them are considered again rather than failing the call.
+ */
+public class LoadBalancer {
+
+  private final String service;
+  private final List<ServiceEndpoint> endpoints;
+  private final LoadBalancingStrategy strategy;
+  private final AtomicInteger sequence;
+
+  public LoadBalancer(String service, List<String> urls, LoadBalancingStrategy strategy) {
+    if (urls == null || urls.isEmpty()) {
+      throw new IllegalArgumentException("service " + service + " has no endpoints");
+    }
+
+    List<ServiceEndpoint> list = new ArrayList<>(urls.size());
+    for (String url : urls) {
+      list.add(new ServiceEndpoint(url));
+    }
+    this.service = service;
+    this.endpoints = Collections.unmodifiableList(list);
+    this.strategy = strategy;
+    this.sequence = new AtomicInteger();
+  }
+
+  public ServiceEndpoint choose() {
+    long now = System.currentTimeMillis();
+    List<ServiceEndpoint> available = null;
+    for (int i = 0; i < endpoints.size(); i++) {
+      ServiceEndpoint endpoint = endpoints.get(i);
+      if (endpoint.isEjected(now)) {
+        if (available == null) {
+          available = new ArrayList<>(endpoints.subList(0, i));
+        }
+      } else if (available != null) {
+        available.add(endpoint);
+      }
+    }
+
+    if (available == null || available.isEmpty()) {
+      available = endpoints;
+    }
+    return strategy.select(available, sequence);
+  }
+
+  public String getService() {
+    return service;
+  }
+
+  public List<ServiceEndpoint> getEndpoints() {
+    return endpoints;
+  }
+
+  public LoadBalancingStrategy getStrategy() {
+    return strategy;
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.balancer;
+
+import lombok.Data;
+
+@Data
+public class LoadBalancerProperties {
+
+  private LoadBalancingStrategy strategy;
+  private Integer ejectionConsecutiveFailures;
+  private Long ejectionBaseTime;
+  private Long ejectionMaxTime;
+
+  public LoadBalancerProperties() {
+    this.init();
+  }
+
+  private void init() {
+    if (this.strategy == null) {
+      this.strategy = LoadBalancingStrategy.ROUND_ROBIN;
+    }
+
+    if (this.ejectionConsecutiveFailures == null) {
+      this.ejectionConsecutiveFailures = 5;
+    }
+
+    if (this.ejectionBaseTime == null) {
+      this.ejectionBaseTime = 10000L;
+    }
+
+    if (this.ejectionMaxTime == null) {
+      this.ejectionMaxTime = 300000L;
+    }
+  }
+}
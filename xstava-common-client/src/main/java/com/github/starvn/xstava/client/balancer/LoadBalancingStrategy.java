@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.balancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public enum LoadBalancingStrategy {
+  ROUND_ROBIN {
+    @Override
+    ServiceEndpoint select(List<ServiceEndpoint> endpoints, AtomicInteger sequence) {
+      return endpoints.get(Math.floorMod(sequence.getAndIncrement(), endpoints.size()));
+    }
+  },
+
+  LEAST_OUTSTANDING {
+    @Override
+    ServiceEndpoint select(List<ServiceEndpoint> endpoints, AtomicInteger sequence) {
+      int size = endpoints.size();
+      int offset = ThreadLocalRandom.current().nextInt(size);
+      ServiceEndpoint selected = null;
+      for (int i = 0; i < size; i++) {
+        ServiceEndpoint endpoint = endpoints.get((offset + i) % size);
+        if (selected == null || endpoint.getOutstanding() < selected.getOutstanding()) {
+          selected = endpoint;
+        }
+      }
+      return selected;
+    }
+  },
+
+  POWER_OF_TWO_CHOICES {
+    @Override
+    ServiceEndpoint select(List<ServiceEndpoint> endpoints, AtomicInteger sequence) {
+      int size = endpoints.size();
+      if (size == 1) {
+        return endpoints.get(0);
+      }
+
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      int first = random.nextInt(size);
+      int second = (first + 1 + random.nextInt(size - 1)) % size;
+      ServiceEndpoint a = endpoints.get(first);
+      ServiceEndpoint b = endpoints.get(second);
+      return a.getOutstanding() <= b.getOutstanding() ? a : b;
+    }
+  };
+
+  abstract ServiceEndpoint select(List<ServiceEndpoint> endpoints, AtomicInteger sequence);
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.balancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/** One upstream replica of a service, with its in-flight count and passive health state. */
+@Slf4j
+public class ServiceEndpoint {
+
+  private final String url;
+  private final AtomicInteger outstanding;
+  private final LongAdder requestCount;
+  private final LongAdder failureCount;
+  private int consecutiveFailures;
+  private int ejectionCount;
+  private volatile long ejectedUntil;
+
+  public ServiceEndpoint(String url) {
+    this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    this.outstanding = new AtomicInteger();
+    this.requestCount = new LongAdder();
+    this.failureCount = new LongAdder();
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public int getOutstanding() {
+    return outstanding.get();
+  }
+
+  public long getRequestCount() {
+    return requestCount.sum();
+  }
+
+  public long getFailureCount() {
+    return failureCount.sum();
+  }
+
+  public boolean isEjected() {
+    return isEjected(System.currentTimeMillis());
+  }
+
+  boolean isEjected(long now) {
+    return ejectedUntil > now;
+  }
+
+  void onStart() {
+    outstanding.incrementAndGet();
+    requestCount.increment();
+  }
+
+  synchronized void onComplete(boolean failed, LoadBalancerProperties properties) {
+    outstanding.decrementAndGet();
+    if (!failed) {
+      consecutiveFailures = 0;
+      if (!isEjected()) {
+        ejectionCount = 0;
+      }
+      return;
+    }
+
+    failureCount.increment();
+    if (++consecutiveFailures >= properties.getEjectionConsecutiveFailures() && !isEjected()) {
+      ejectionCount++;
+      long ejectionTime =
+          Math.min(
+              properties.getEjectionMaxTime(), properties.getEjectionBaseTime() * ejectionCount);
+      ejectedUntil = System.currentTimeMillis() + ejectionTime;
+      consecutiveFailures = 0;
+      log.warn("(onComplete) endpoint: {}|ejected for {}ms", url, ejectionTime);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ServiceEndpoint(url="
+        + url
+        + ", outstanding="
+        + getOutstanding()
+        + ", requests="
+        + getRequestCount()
+        + ", failures="
+        + getFailureCount()
+        + ", ejected="
+        + isEjected()
+        + ")";
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hc.client5.http.cache.CacheResponseStatus;
+
+/**
+ * Counts how each cached exchange was answered: from cache, after revalidation or from origin. With
+ * a disk tier, also counts which tier the stored entries were read from.
+ */
+public class HttpCacheStats {
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder validated = new LongAdder();
+  private final LongAdder moduleResponses = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder memoryTierHits = new LongAdder();
+  private final LongAdder diskTierHits = new LongAdder();
+
+  public void record(CacheResponseStatus status) {
+    if (status == null) {
+      return;
+    }
+
+    switch (status) {
+      case CACHE_HIT:
+        hits.increment();
+        break;
+      case VALIDATED:
+        validated.increment();
+        break;
+      case CACHE_MODULE_RESPONSE:
+        moduleResponses.increment();
+        break;
+      case FAILURE:
+        failures.increment();
+        break;
+      default:
+        misses.increment();
+    }
+  }
+
+  void recordMemoryTierHit() {
+    memoryTierHits.increment();
+  }
+
+  void recordDiskTierHit() {
+    diskTierHits.increment();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getValidated() {
+    return validated.sum();
+  }
+
+  public long getModuleResponses() {
+    return moduleResponses.sum();
+  }
+
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  public long getMemoryTierHits() {
+    return memoryTierHits.sum();
+  }
+
+  public long getDiskTierHits() {
+    return diskTierHits.sum();
+  }
+
+  public double getHitRatio() {
+    long served = getHits() + getValidated();
+    long total = served + getMisses() + getFailures();
+    return total == 0 ? 0 : (double) served / total;
+  }
+
+  @Override
+  public String toString() {
+    return "HttpCacheStats(hits="
+        + getHits()
+        + ", misses="
+        + getMisses()
+        + ", validated="
+        + getValidated()
+        + ", moduleResponses="
+        + getModuleResponses()
+        + ", failures="
+        + getFailures()
+        + ", memoryTierHits="
+        + getMemoryTierHits()
+        + ", diskTierHits="
+        + getDiskTierHits()
+        + ")";
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.hc.client5.http.cache.HttpCacheCASOperation;
+import org.apache.hc.client5.http.cache.HttpCacheEntry;
+import org.apache.hc.client5.http.cache.HttpCacheStorage;
+import org.apache.hc.client5.http.cache.HttpCacheUpdateException;
+import org.apache.hc.client5.http.cache.Resource;
+import org.apache.hc.client5.http.cache.ResourceIOException;
+import org.apache.hc.client5.http.impl.cache.HeapResource;
+import org.apache.hc.client5.http.impl.cache.ManagedHttpCacheStorage;
+
+/**
+ * Keeps the most recently used entries on the heap in front of a larger file-backed store. Every
+ * entry is written to disk; reads are answered from memory when possible and entries read from disk
+ * are promoted, so hot responses are served without touching the file system.
+ */
+public class TieredHttpCacheStorage implements HttpCacheStorage {
+
+  private final ManagedHttpCacheStorage disk;
+  private final HttpCacheStats stats;
+  private final LinkedHashMap<String, MemoryEntry> memory;
+
+  public TieredHttpCacheStorage(
+      int maxMemoryEntries, ManagedHttpCacheStorage disk, HttpCacheStats stats) {
+    this.disk = disk;
+    this.stats = stats;
+    this.memory =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, MemoryEntry> eldest) {
+            return size() > maxMemoryEntries;
+          }
+        };
+  }
+
+  @Override
+  public void putEntry(String key, HttpCacheEntry entry) throws ResourceIOException {
+    disk.putEntry(key, entry);
+    promote(key, entry);
+  }
+
+  @Override
+  public HttpCacheEntry getEntry(String key) throws ResourceIOException {
+    MemoryEntry cached;
+    synchronized (memory) {
+      cached = memory.get(key);
+    }
+    if (cached != null) {
+      stats.recordMemoryTierHit();
+      return cached.toEntry();
+    }
+
+    HttpCacheEntry entry = disk.getEntry(key);
+    if (entry != null) {
+      stats.recordDiskTierHit();
+      promote(key, entry);
+    }
+    return entry;
+  }
+
+  @Override
+  public void removeEntry(String key) throws ResourceIOException {
+    evict(key);
+    disk.removeEntry(key);
+  }
+
+  @Override
+  public void updateEntry(String key, HttpCacheCASOperation casOperation)
+      throws ResourceIOException, HttpCacheUpdateException {
+    // the next read promotes the updated entry from disk
+    evict(key);
+    disk.updateEntry(key, casOperation);
+    evict(key);
+  }
+
+  @Override
+  public Map<String, HttpCacheEntry> getEntries(Collection<String> keys)
+      throws ResourceIOException {
+    Map<String, HttpCacheEntry> entries = new HashMap<>();
+    for (String key : keys) {
+      HttpCacheEntry entry = getEntry(key);
+      if (entry != null) {
+        entries.put(key, entry);
+      }
+    }
+    return entries;
+  }
+
+  /** Deletes the files of entries evicted from the disk tier. */
+  public void cleanResources() {
+    disk.cleanResources();
+  }
+
+  public void shutdown() {
+    synchronized (memory) {
+      memory.clear();
+    }
+    disk.shutdown();
+  }
+
+  private void promote(String key, HttpCacheEntry entry) throws ResourceIOException {
+    Resource resource = entry.getResource();
+    MemoryEntry cached = new MemoryEntry(entry, resource != null ? resource.get() : null);
+    synchronized (memory) {
+      memory.put(key, cached);
+    }
+  }
+
+  private void evict(String key) {
+    synchronized (memory) {
+      memory.remove(key);
+    }
+  }
+
+  /**
+   * The body is kept apart from the entry, since callers may dispose the resource they are handed;
+   * each read wraps it in a fresh one.
+   */
+  private static final class MemoryEntry {
+
+    private final HttpCacheEntry entry;
+    private final byte[] body;
+
+    private MemoryEntry(HttpCacheEntry entry, byte[] body) {
+      this.entry = entry;
+      this.body = body;
+    }
+
+    private HttpCacheEntry toEntry() {
+      if (body == null) {
+        return entry;
+      }
+      return new HttpCacheEntry(
+          entry.getRequestInstant(),
+          entry.getResponseInstant(),
+          entry.getStatus(),
+          entry.getHeaders(),
+          new HeapResource(body),
+          entry.getVariantMap());
+    }
+  }
+}
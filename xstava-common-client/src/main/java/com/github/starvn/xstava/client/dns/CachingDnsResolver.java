@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.SystemDefaultDnsResolver;
+
+/**
+ * Caches resolved addresses for a bounded time, and failed lookups for a shorter one, so the
+ * resolver is only consulted again once an entry expires. Concurrent lookups of the same host share
+ * one call to the resolver. When a refresh fails, the last good addresses are served for up to one
+ * more TTL, retried after the negative TTL. Entries past that window are swept on every lookup.
+ */
+@Slf4j
+public class CachingDnsResolver implements DnsResolver {
+
+  private final DnsResolver delegate;
+  private final long ttlNanos;
+  private final long negativeTtlNanos;
+  private final ConcurrentMap<String, Entry> cache;
+  private final ConcurrentMap<String, CompletableFuture<Entry>> inFlight;
+
+  public CachingDnsResolver(long ttlMillis, long negativeTtlMillis) {
+    this(SystemDefaultDnsResolver.INSTANCE, ttlMillis, negativeTtlMillis);
+  }
+
+  public CachingDnsResolver(DnsResolver delegate, long ttlMillis, long negativeTtlMillis) {
+    this.delegate = delegate;
+    this.ttlNanos = ttlMillis * 1_000_000L;
+    this.negativeTtlNanos = negativeTtlMillis * 1_000_000L;
+    this.cache = new ConcurrentHashMap<>();
+    this.inFlight = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public InetAddress[] resolve(String host) throws UnknownHostException {
+    Entry entry = cache.get(host);
+    if (entry == null || System.nanoTime() - entry.expiresAt >= 0) {
+      entry = lookup(host, entry);
+    }
+
+    if (entry.addresses == null) {
+      UnknownHostException ex = new UnknownHostException(host);
+      ex.initCause(entry.failure);
+      throw ex;
+    }
+    return entry.addresses.clone();
+  }
+
+  @Override
+  public String resolveCanonicalHostname(String host) throws UnknownHostException {
+    return delegate.resolveCanonicalHostname(host);
+  }
+
+  public void invalidate(String host) {
+    cache.remove(host);
+  }
+
+  public void invalidateAll() {
+    cache.clear();
+  }
+
+  public int size() {
+    return cache.size();
+  }
+
+  private Entry lookup(String host, Entry previous) throws UnknownHostException {
+    CompletableFuture<Entry> flight = new CompletableFuture<>();
+    CompletableFuture<Entry> leader = inFlight.putIfAbsent(host, flight);
+    if (leader != null) {
+      try {
+        return leader.join();
+      } catch (CompletionException ex) {
+        Throwable cause = ex.getCause();
+        if (cause instanceof UnknownHostException) {
+          throw (UnknownHostException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw ex;
+      }
+    }
+
+    try {
+      Entry entry = refresh(host, previous);
+      flight.complete(entry);
+      return entry;
+    } catch (UnknownHostException | RuntimeException | Error ex) {
+      flight.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inFlight.remove(host, flight);
+    }
+  }
+
+  private Entry refresh(String host, Entry previous) throws UnknownHostException {
+    long now = System.nanoTime();
+    sweep(now);
+    Entry entry;
+    try {
+      entry = new Entry(delegate.resolve(host), null, now + ttlNanos, now + 2 * ttlNanos);
+    } catch (UnknownHostException ex) {
+      if (previous != null && previous.addresses != null && now - previous.staleUntil < 0) {
+        log.warn("(refresh) host: {}|serve stale addresses|{}", host, ex.toString());
+        entry =
+            new Entry(
+                previous.addresses, null, now + Math.max(negativeTtlNanos, 0), previous.staleUntil);
+      } else if (negativeTtlNanos > 0) {
+        entry = new Entry(null, ex, now + negativeTtlNanos, now + negativeTtlNanos);
+      } else {
+        cache.remove(host);
+        throw ex;
+      }
+    }
+    cache.put(host, entry);
+    return entry;
+  }
+
+  private void sweep(long now) {
+    cache.values().removeIf(entry -> now - entry.staleUntil >= 0);
+  }
+
+  private static final class Entry {
+    private final InetAddress[] addresses;
+    private final UnknownHostException failure;
+    private final long expiresAt;
+    private final long staleUntil;
+
+    private Entry(
+        InetAddress[] addresses, UnknownHostException failure, long expiresAt, long staleUntil) {
+      this.addresses = addresses;
+      this.failure = failure;
+      this.expiresAt = expiresAt;
+      this.staleUntil = staleUntil;
+    }
+  }
+}
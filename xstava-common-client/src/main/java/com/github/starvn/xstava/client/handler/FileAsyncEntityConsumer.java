@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.starvn.xstava.client.handler;
+
+import com.github.starvn.xstava.util.ExceptionUtil;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.nio.entity.AbstractBinAsyncEntityConsumer;
+
+@Slf4j
+public class FileAsyncEntityConsumer extends AbstractBinAsyncEntityConsumer<File> {
+
+  private static final int CAPACITY_INCREMENT = 64 * 1024;
+
+  private final File file;
+  private FileChannel channel;
+
+  public FileAsyncEntityConsumer(File file) {
+    this.file = file;
+  }
+
+  @Override
+  protected void streamStart(ContentType contentType) throws IOException {
+    channel =
+        FileChannel.open(
+            file.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  @Override
+  protected File generateContent() {
+    return file;
+  }
+
+  @Override
+  protected int capacityIncrement() {
+    return CAPACITY_INCREMENT;
+  }
+
+  @Override
+  protected void data(ByteBuffer src, boolean endOfStream) throws IOException {
+    while (src.hasRemaining()) {
+      channel.write(src);
+    }
+    if (endOfStream) {
+      releaseResources();
+    }
+  }
+
+  @Override
+  public void releaseResources() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException ex) {
+        log.error("(releaseResources) ex: {}", ExceptionUtil.getFullStackTrace(ex, true));
+      }
+      channel = null;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.handler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.entity.DiscardingEntityConsumer;
+import org.apache.hc.core5.http.nio.support.BasicResponseConsumer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+/**
+ * Writes a 2xx response body into a file through {@link FileAsyncEntityConsumer} and discards any
+ * other body, so an error page never overwrites the target file. The message body is the file, or
+ * null when nothing was written.
+ */
+public class FileResponseConsumer implements AsyncResponseConsumer<Message<HttpResponse, File>> {
+
+  private final File file;
+  private volatile AsyncResponseConsumer<Message<HttpResponse, File>> delegate;
+
+  public FileResponseConsumer(File file) {
+    this.file = file;
+  }
+
+  @Override
+  public void consumeResponse(
+      HttpResponse response,
+      EntityDetails entityDetails,
+      HttpContext context,
+      FutureCallback<Message<HttpResponse, File>> resultCallback)
+      throws HttpException, IOException {
+    int code = response.getCode();
+    delegate =
+        code >= HttpStatus.SC_SUCCESS && code < HttpStatus.SC_REDIRECTION
+            ? new BasicResponseConsumer<>(new FileAsyncEntityConsumer(file))
+            : new BasicResponseConsumer<>(new DiscardingEntityConsumer<>());
+    delegate.consumeResponse(response, entityDetails, context, resultCallback);
+  }
+
+  @Override
+  public void informationResponse(HttpResponse response, HttpContext context) {}
+
+  @Override
+  public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+    delegate.updateCapacity(capacityChannel);
+  }
+
+  @Override
+  public void consume(ByteBuffer src) throws IOException {
+    delegate.consume(src);
+  }
+
+  @Override
+  public void streamEnd(List<? extends Header> trailers) throws HttpException, IOException {
+    delegate.streamEnd(trailers);
+  }
+
+  @Override
+  public void failed(Exception cause) {
+    if (delegate != null) {
+      delegate.failed(cause);
+    }
+  }
+
+  @Override
+  public void releaseResources() {
+    if (delegate != null) {
+      delegate.releaseResources();
+    }
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.starvn.xstava.client.handler;
+
+import com.google.common.collect.Multimap;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a response body straight from the connection. The stream is only valid inside {@link
+ * #consume}; the connection is released back to the pool once it returns or throws.
+ */
+@FunctionalInterface
+public interface HttpResponseConsumer<T> {
+
+  T consume(int statusCode, Multimap<String, String> headers, InputStream body) throws IOException;
+}
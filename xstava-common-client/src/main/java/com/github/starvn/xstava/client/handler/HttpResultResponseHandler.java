@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.handler;
+
+import com.github.starvn.xstava.client.HttpResult;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import java.io.IOException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.MessageHeaders;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+
+/**
+ * Reads the response while the connection is still leased, so the connection can go back to the
+ * pool as soon as the handler returns.
+ */
+@Slf4j
+public class HttpResultResponseHandler implements HttpClientResponseHandler<HttpResult> {
+
+  @Override
+  public HttpResult handleResponse(ClassicHttpResponse response)
+      throws IOException, ParseException {
+    HttpResult result = new HttpResult(response.getCode());
+    if (response.getEntity() != null) {
+      result.setBody(EntityUtils.toString(response.getEntity()));
+      result.setHeaders(toHeaders(response));
+    } else {
+      log.info("(handleResponse) response: {}", response);
+      result.setBody("");
+    }
+    return result;
+  }
+
+  public static Multimap<String, String> toHeaders(MessageHeaders response) {
+    Multimap<String, String> headers = ArrayListMultimap.create();
+    for (Header header : response.getHeaders()) {
+      headers.put(header.getName(), header.getValue());
+    }
+    return headers;
+  }
+}
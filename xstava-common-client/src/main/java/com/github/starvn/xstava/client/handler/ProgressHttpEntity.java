@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.starvn.xstava.client.handler;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+
+/** Reports bytes written to the wire, at most once per {@link #REPORT_INTERVAL} bytes. */
+public class ProgressHttpEntity extends HttpEntityWrapper {
+
+  private static final long REPORT_INTERVAL = 64 * 1024;
+
+  private final UploadProgressListener listener;
+
+  public ProgressHttpEntity(HttpEntity entity, UploadProgressListener listener) {
+    super(entity);
+    this.listener = listener;
+  }
+
+  @Override
+  public void writeTo(OutputStream outStream) throws IOException {
+    CountingOutputStream countingStream = new CountingOutputStream(outStream);
+    super.writeTo(countingStream);
+    countingStream.report();
+  }
+
+  private class CountingOutputStream extends FilterOutputStream {
+
+    private final long startTime = System.nanoTime();
+    private long transferred;
+    private long reported;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count(len);
+    }
+
+    private void count(long len) {
+      transferred += len;
+      if (transferred - reported >= REPORT_INTERVAL) {
+        report();
+      }
+    }
+
+    private void report() {
+      reported = transferred;
+      double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+      listener.onProgress(transferred, getContentLength(), transferred / seconds);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.metrics;
+
+import com.fasterxml.jackson.core.JacksonException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import javax.net.ssl.SSLException;
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.client5.http.impl.classic.RequestFailedException;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.NoHttpResponseException;
+
+public enum HttpErrorClass {
+  DEADLINE,
+  CANCELLED,
+  POOL_TIMEOUT,
+  DNS,
+  CONNECT_TIMEOUT,
+  CONNECT,
+  TLS,
+  READ_TIMEOUT,
+  NO_RESPONSE,
+  PROTOCOL,
+  DECODE,
+  IO,
+  OTHER;
+
+  public static HttpErrorClass of(Throwable ex) {
+    if (ex instanceof UnknownHostException) {
+      return DNS;
+    } else if (ex instanceof ConnectTimeoutException) {
+      return CONNECT_TIMEOUT;
+    } else if (ex instanceof ConnectException) {
+      return CONNECT;
+    } else if (ex instanceof SSLException) {
+      return TLS;
+    } else if (ex instanceof SocketTimeoutException) {
+      return READ_TIMEOUT;
+    } else if (ex instanceof NoHttpResponseException) {
+      return NO_RESPONSE;
+    } else if (ex instanceof RequestFailedException) {
+      return CANCELLED;
+    } else if (ex instanceof ConnectionRequestTimeoutException) {
+      return POOL_TIMEOUT;
+    } else if (ex instanceof JacksonException) {
+      return DECODE;
+    } else if (ex instanceof HttpException) {
+      return PROTOCOL;
+    } else if (ex instanceof IOException) {
+      return IO;
+    }
+    return OTHER;
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.metrics;
+
+import lombok.Data;
+
+/**
+ * Timings of one request in nanoseconds. Connection phases stay 0 when a pooled connection was
+ * reused, and always for the async client, whose I/O reactor does not attribute them to requests;
+ * byte counts cover message bodies as sent and received on the wire.
+ */
+@Data
+public class HttpRequestMetrics {
+
+  private String operation;
+  private String method;
+  private String route;
+  private Integer statusCode;
+  private HttpErrorClass errorClass;
+  private boolean connectionReused = true;
+  private long startNanos;
+  private long leaseNanos;
+  private long dnsNanos;
+  private long connectNanos;
+  private long tlsNanos;
+  private long timeToFirstByteNanos;
+  private long totalNanos;
+  private long bytesSent;
+  private long bytesReceived;
+
+  public boolean isSuccess() {
+    return errorClass == null;
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the number of concurrent calls. Callers that find no free permit wait in a bounded FIFO
+ * queue; a released permit is handed straight to the next waiter, so asynchronous callers never
+ * block a thread while they wait.
+ */
+public class Bulkhead {
+
+  private static final CompletableFuture<Void> ACQUIRED = CompletableFuture.completedFuture(null);
+
+  private final String name;
+  private final int maxConcurrent;
+  private final int maxQueue;
+  private final Deque<CompletableFuture<Void>> waiters;
+  private final LongAdder rejectedCount;
+  private int available;
+
+  public Bulkhead(String name, int maxConcurrent, int maxQueue) {
+    this.name = name;
+    this.maxConcurrent = maxConcurrent;
+    this.maxQueue = maxQueue;
+    this.waiters = new ArrayDeque<>();
+    this.rejectedCount = new LongAdder();
+    this.available = maxConcurrent;
+  }
+
+  /**
+   * Returns a future that completes once a permit is held, or fails with a {@link TimeoutException}
+   * when none was free within {@code maxWaitMillis} or the queue was full.
+   */
+  public CompletableFuture<Void> acquireAsync(long maxWaitMillis) {
+    CompletableFuture<Void> waiter;
+    synchronized (this) {
+      if (available > 0) {
+        available--;
+        return ACQUIRED;
+      }
+      if (waiters.size() >= maxQueue || maxWaitMillis <= 0) {
+        rejectedCount.increment();
+        return CompletableFuture.failedFuture(new TimeoutException("bulkhead " + name + " full"));
+      }
+      waiter = new CompletableFuture<>();
+      waiters.addLast(waiter);
+    }
+
+    waiter.orTimeout(maxWaitMillis, TimeUnit.MILLISECONDS);
+    waiter.whenComplete(
+        (ignored, ex) -> {
+          if (ex != null) {
+            rejectedCount.increment();
+            synchronized (this) {
+              waiters.remove(waiter);
+            }
+          }
+        });
+    return waiter;
+  }
+
+  /** Blocks for at most {@code maxWaitMillis} until a permit is held. */
+  public boolean tryAcquire(long maxWaitMillis) {
+    CompletableFuture<Void> waiter = acquireAsync(maxWaitMillis);
+    try {
+      waiter.get();
+      return true;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      if (!waiter.cancel(false) && !waiter.isCompletedExceptionally()) {
+        // the permit was handed over in the meantime
+        release();
+      }
+      return false;
+    } catch (ExecutionException ex) {
+      return false;
+    }
+  }
+
+  public void release() {
+    CompletableFuture<Void> waiter;
+    do {
+      synchronized (this) {
+        waiter = waiters.pollFirst();
+        if (waiter == null) {
+          available = Math.min(maxConcurrent, available + 1);
+          return;
+        }
+      }
+    } while (!waiter.complete(null));
+  }
+
+  public synchronized int getQueueDepth() {
+    return waiters.size();
+  }
+
+  public synchronized int getAvailablePermits() {
+    return available;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+}
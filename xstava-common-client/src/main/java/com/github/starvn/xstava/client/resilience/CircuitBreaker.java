@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Count-based circuit breaker. Opens once the failure rate over the last calls reaches the
+ * threshold, rejects calls while open, then lets a few trial calls through to decide whether to
+ * close again.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final String name;
+  private final int minimumCalls;
+  private final int failureRateThreshold;
+  private final long openDurationNanos;
+  private final int halfOpenCalls;
+  private final boolean[] window;
+  private final LongAdder notPermittedCount;
+  private State state;
+  private int windowIndex;
+  private int windowCount;
+  private int windowFailures;
+  private long openedAt;
+  private int halfOpenPermits;
+  private int halfOpenSuccesses;
+
+  public CircuitBreaker(String name, ResilienceProperties properties) {
+    this.name = name;
+    this.minimumCalls = properties.getCircuitMinimumCalls();
+    this.failureRateThreshold = properties.getCircuitFailureRateThreshold();
+    this.openDurationNanos = properties.getCircuitOpenDuration() * 1_000_000L;
+    this.halfOpenCalls = properties.getCircuitHalfOpenCalls();
+    this.window = new boolean[properties.getCircuitWindowSize()];
+    this.notPermittedCount = new LongAdder();
+    this.state = State.CLOSED;
+  }
+
+  public synchronized boolean tryAcquire() {
+    if (state == State.OPEN && System.nanoTime() - openedAt >= openDurationNanos) {
+      transitionTo(State.HALF_OPEN);
+    }
+
+    boolean permitted;
+    if (state == State.CLOSED) {
+      permitted = true;
+    } else if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls) {
+      halfOpenPermits++;
+      permitted = true;
+    } else {
+      permitted = false;
+    }
+
+    if (!permitted) {
+      notPermittedCount.increment();
+    }
+    return permitted;
+  }
+
+  public synchronized void onResult(boolean failed) {
+    if (state == State.HALF_OPEN) {
+      if (failed) {
+        transitionTo(State.OPEN);
+      } else if (++halfOpenSuccesses >= halfOpenCalls) {
+        transitionTo(State.CLOSED);
+      }
+      return;
+    }
+
+    if (state == State.OPEN) {
+      return;
+    }
+
+    if (windowCount == window.length) {
+      if (window[windowIndex]) {
+        windowFailures--;
+      }
+    } else {
+      windowCount++;
+    }
+    window[windowIndex] = failed;
+    if (failed) {
+      windowFailures++;
+    }
+    windowIndex = (windowIndex + 1) % window.length;
+
+    if (windowCount >= minimumCalls && getFailureRate() >= failureRateThreshold) {
+      transitionTo(State.OPEN);
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  public synchronized float getFailureRate() {
+    return windowCount == 0 ? 0 : windowFailures * 100f / windowCount;
+  }
+
+  public long getNotPermittedCount() {
+    return notPermittedCount.sum();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  private void transitionTo(State newState) {
+    log.info("(transitionTo) circuit: {}|{} -> {}", name, state, newState);
+    state = newState;
+    halfOpenPermits = 0;
+    halfOpenSuccesses = 0;
+    if (newState == State.OPEN) {
+      openedAt = System.nanoTime();
+    } else if (newState == State.CLOSED) {
+      windowIndex = 0;
+      windowCount = 0;
+      windowFailures = 0;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpResult;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries idempotent methods on transport failures and retryable statuses, waiting an exponentially
+ * growing, jittered backoff between attempts.
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+  private static final Set<HttpMethod> IDEMPOTENT_METHODS =
+      Set.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.PUT, HttpMethod.DELETE);
+  private static final Set<Integer> RETRYABLE_STATUSES = Set.of(429, 502, 503, 504);
+
+  private final int maxAttempts;
+  private final long initialBackoff;
+  private final long maxBackoff;
+  private final double multiplier;
+  private final double jitter;
+  private final int defaultHttpCode;
+
+  public ExponentialBackoffRetryPolicy(ResilienceProperties properties, int defaultHttpCode) {
+    this.maxAttempts = properties.getRetryMaxAttempts();
+    this.initialBackoff = properties.getRetryInitialBackoff();
+    this.maxBackoff = properties.getRetryMaxBackoff();
+    this.multiplier = properties.getRetryBackoffMultiplier();
+    this.jitter = properties.getRetryJitter();
+    this.defaultHttpCode = defaultHttpCode;
+  }
+
+  @Override
+  public boolean shouldRetry(HttpMethod method, int attempt, HttpResult result) {
+    if (attempt >= maxAttempts || !IDEMPOTENT_METHODS.contains(method)) {
+      return false;
+    }
+
+    Integer statusCode = result != null ? result.getStatusCode() : null;
+    return statusCode == null
+        || statusCode == defaultHttpCode
+        || RETRYABLE_STATUSES.contains(statusCode);
+  }
+
+  @Override
+  public long getBackoff(int attempt) {
+    double backoff =
+        Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, Math.max(0, attempt - 1)));
+    double spread = backoff * jitter;
+    return Math.max(
+        0, Math.round(backoff - spread + ThreadLocalRandom.current().nextDouble() * 2 * spread));
+  }
+}
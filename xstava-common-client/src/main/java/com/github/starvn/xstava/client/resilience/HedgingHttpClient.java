@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.service.DefaultHttpClient;
+import com.github.starvn.xstava.client.service.ForwardingHttpClient;
+import com.github.starvn.xstava.client.util.RouteUtil;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.core5.http.HttpStatus;
+
+/**
+ * Hedges GET/HEAD queries: when the first attempt has not answered within the route's latency
+ * percentile, a second attempt is sent, optionally to an alternate url, and the first successful
+ * answer wins. The losing attempt is cancelled, which aborts its request. Only first attempts feed
+ * the latency percentile, and a first attempt cancelled because the hedge won counts with the time
+ * it had run, a lower bound of its latency, so lost attempts do not drag the hedge delay down.
+ */
+@Slf4j
+public class HedgingHttpClient extends ForwardingHttpClient {
+
+  private static final int LATENCY_SAMPLES = 1000;
+
+  private final DefaultHttpClient httpClient;
+  private final ResilienceProperties resilienceProperties;
+  private final int defaultHttpCode;
+  private final Function<String, String> alternateUrl;
+  private final ConcurrentMap<String, LatencyTracker> latencyTrackers;
+  private final LongAdder hedgedCount;
+  private final LongAdder hedgeWinCount;
+
+  public HedgingHttpClient(
+      DefaultHttpClient httpClient,
+      HttpProperties httpProperties,
+      ResilienceProperties resilienceProperties) {
+    this(httpClient, httpProperties, resilienceProperties, Function.identity());
+  }
+
+  public HedgingHttpClient(
+      DefaultHttpClient httpClient,
+      HttpProperties httpProperties,
+      ResilienceProperties resilienceProperties,
+      Function<String, String> alternateUrl) {
+    super(httpClient);
+    this.httpClient = httpClient;
+    this.resilienceProperties = resilienceProperties;
+    this.defaultHttpCode = httpProperties.getDefaultHttpCode();
+    this.alternateUrl = alternateUrl;
+    this.latencyTrackers = new ConcurrentHashMap<>();
+    this.hedgedCount = new LongAdder();
+    this.hedgeWinCount = new LongAdder();
+  }
+
+  @Override
+  public HttpResult query(HttpMethod method, String url, boolean allowRedirect) {
+    return query(method, url, allowRedirect, null);
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+      return httpClient.query(method, url, allowRedirect, headers);
+    }
+
+    LatencyTracker tracker = getLatencyTracker(url);
+    CompletableFuture<HttpResult> primary = attempt(tracker, method, url, allowRedirect, headers);
+    try {
+      return primary.get(getHedgeDelay(tracker), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException ex) {
+      hedgedCount.increment();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      primary.cancel(true);
+      return new HttpResult(defaultHttpCode);
+    } catch (ExecutionException ex) {
+      log.error("(query) url: {}|{}", url, ex.getCause().toString());
+      return new HttpResult(defaultHttpCode);
+    }
+
+    CompletableFuture<HttpResult> hedge =
+        httpClient.submit(method, alternateUrl.apply(url), allowRedirect, headers);
+    CompletableFuture<HttpResult> winner = new CompletableFuture<>();
+    AtomicInteger remaining = new AtomicInteger(2);
+    primary.whenComplete((result, ex) -> complete(winner, remaining, result));
+    hedge.whenComplete(
+        (result, ex) -> {
+          if (complete(winner, remaining, result) && !isFailure(result)) {
+            hedgeWinCount.increment();
+          }
+        });
+    try {
+      return winner.join();
+    } finally {
+      primary.cancel(true);
+      hedge.cancel(true);
+    }
+  }
+
+  public long getHedgedCount() {
+    return hedgedCount.sum();
+  }
+
+  public long getHedgeWinCount() {
+    return hedgeWinCount.sum();
+  }
+
+  public LatencyTracker getLatencyTracker(String url) {
+    return latencyTrackers.computeIfAbsent(
+        RouteUtil.getRoute(url),
+        route -> new LatencyTracker(LATENCY_SAMPLES, resilienceProperties.getHedgePercentile()));
+  }
+
+  /** Sends the first attempt, timed for the route's latency percentile. */
+  private CompletableFuture<HttpResult> attempt(
+      LatencyTracker tracker,
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers) {
+    long start = System.nanoTime();
+    CompletableFuture<HttpResult> future = httpClient.submit(method, url, allowRedirect, headers);
+    future.whenComplete(
+        (result, ex) -> {
+          if ((ex == null && !isFailure(result)) || ex instanceof CancellationException) {
+            tracker.record((System.nanoTime() - start) / 1_000_000L);
+          }
+        });
+    return future;
+  }
+
+  private boolean complete(
+      CompletableFuture<HttpResult> winner, AtomicInteger remaining, HttpResult result) {
+    boolean last = remaining.decrementAndGet() == 0;
+    if (result != null && (!isFailure(result) || last)) {
+      return winner.complete(result);
+    }
+    if (last) {
+      return winner.complete(new HttpResult(defaultHttpCode));
+    }
+    return false;
+  }
+
+  private long getHedgeDelay(LatencyTracker tracker) {
+    if (tracker.getCount() < resilienceProperties.getHedgeMinSamples()) {
+      return resilienceProperties.getHedgeDefaultDelay();
+    }
+    return Math.max(resilienceProperties.getHedgeMinDelay(), tracker.getPercentile());
+  }
+
+  private boolean isFailure(HttpResult result) {
+    return result == null
+        || result.getStatusCode() == null
+        || result.getStatusCode() == defaultHttpCode
+        || result.getStatusCode() >= HttpStatus.SC_SERVER_ERROR;
+  }
+}
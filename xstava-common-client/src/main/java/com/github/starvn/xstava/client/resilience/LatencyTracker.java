@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latencies of a route and answers percentile queries. The percentile is
+ * recomputed every few samples instead of on every call.
+ */
+public class LatencyTracker {
+
+  private static final int RECOMPUTE_INTERVAL = 32;
+
+  private final long[] samples;
+  private final double percentile;
+  private int index;
+  private int count;
+  private int sinceRecompute;
+  private long cachedPercentile;
+
+  public LatencyTracker(int capacity, double percentile) {
+    this.samples = new long[capacity];
+    this.percentile = percentile;
+    this.cachedPercentile = -1;
+  }
+
+  public synchronized void record(long latencyMillis) {
+    samples[index] = latencyMillis;
+    index = (index + 1) % samples.length;
+    if (count < samples.length) {
+      count++;
+    }
+    sinceRecompute++;
+  }
+
+  public synchronized int getCount() {
+    return count;
+  }
+
+  /** Returns the tracked percentile in milliseconds, or -1 when nothing was recorded yet. */
+  public synchronized long getPercentile() {
+    if (count == 0) {
+      return -1;
+    }
+
+    if (cachedPercentile < 0 || sinceRecompute >= RECOMPUTE_INTERVAL) {
+      long[] sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      int rank = (int) Math.ceil(percentile / 100 * count) - 1;
+      cachedPercentile = sorted[Math.min(count - 1, Math.max(0, rank))];
+      sinceRecompute = 0;
+    }
+    return cachedPercentile;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket that refills at a fixed rate up to the burst size. Callers reserve a token ahead of
+ * time and are told how long to wait for it, so waiting callers are served in order and the
+ * outbound rate stays smooth; a reservation that would wait longer than allowed is rejected.
+ */
+public class RateLimiter {
+
+  private final String name;
+  private final double permitsPerNano;
+  private final double burst;
+  private final LongAdder rejectedCount;
+  private double tokens;
+  private long refilledAt;
+
+  public RateLimiter(String name, double permitsPerSecond, int burst) {
+    this.name = name;
+    this.permitsPerNano = permitsPerSecond / 1_000_000_000L;
+    this.burst = burst > 0 ? burst : Math.max(1, Math.ceil(permitsPerSecond));
+    this.rejectedCount = new LongAdder();
+    this.tokens = this.burst;
+    this.refilledAt = System.nanoTime();
+  }
+
+  /**
+   * Reserves one token and returns the nanos to wait before using it, or -1 when the wait would
+   * exceed {@code maxWaitNanos}.
+   */
+  public synchronized long reserve(long maxWaitNanos) {
+    refill();
+    long waitNanos = tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / permitsPerNano);
+    if (waitNanos > maxWaitNanos) {
+      rejectedCount.increment();
+      return -1;
+    }
+    tokens -= 1;
+    return waitNanos;
+  }
+
+  /** Returns a reserved token that was not used, e.g. because the call was rejected later on. */
+  public synchronized void refund() {
+    refill();
+    tokens = Math.min(burst, tokens + 1);
+  }
+
+  /** Number of callers holding a reservation whose token has not been refilled yet. */
+  public synchronized int getQueueDepth() {
+    refill();
+    return tokens >= 0 ? 0 : (int) Math.ceil(-tokens);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    tokens = Math.min(burst, tokens + (now - refilledAt) * permitsPerNano);
+    refilledAt = now;
+  }
+}
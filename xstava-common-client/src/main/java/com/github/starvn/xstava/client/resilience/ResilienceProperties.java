@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import lombok.Data;
+
+@Data
+public class ResilienceProperties {
+
+  private Integer retryMaxAttempts;
+  private Long retryInitialBackoff;
+  private Long retryMaxBackoff;
+  private Double retryBackoffMultiplier;
+  private Double retryJitter;
+  private Double retryBudgetRatio;
+  private Integer retryBudgetMinPerSecond;
+  private Integer circuitWindowSize;
+  private Integer circuitMinimumCalls;
+  private Integer circuitFailureRateThreshold;
+  private Long circuitSlowCallDuration;
+  private Long circuitOpenDuration;
+  private Integer circuitHalfOpenCalls;
+  private Double hedgePercentile;
+  private Integer hedgeMinSamples;
+  private Long hedgeDefaultDelay;
+  private Long hedgeMinDelay;
+  private Double rateLimitPerSecond;
+  private Integer rateLimitBurst;
+  private Integer bulkheadMaxConcurrent;
+  private Integer bulkheadMaxQueue;
+  private Long throttleMaxWait;
+  private Integer throttleMaxThreads;
+
+  public ResilienceProperties() {
+    this.init();
+  }
+
+  private void init() {
+    if (this.retryMaxAttempts == null) {
+      this.retryMaxAttempts = 3;
+    }
+
+    if (this.retryInitialBackoff == null) {
+      this.retryInitialBackoff = 100L;
+    }
+
+    if (this.retryMaxBackoff == null) {
+      this.retryMaxBackoff = 2000L;
+    }
+
+    if (this.retryBackoffMultiplier == null) {
+      this.retryBackoffMultiplier = 2.0;
+    }
+
+    if (this.retryJitter == null) {
+      this.retryJitter = 0.5;
+    }
+
+    if (this.retryBudgetRatio == null) {
+      this.retryBudgetRatio = 0.2;
+    }
+
+    if (this.retryBudgetMinPerSecond == null) {
+      this.retryBudgetMinPerSecond = 10;
+    }
+
+    if (this.circuitWindowSize == null) {
+      this.circuitWindowSize = 50;
+    }
+
+    if (this.circuitMinimumCalls == null) {
+      this.circuitMinimumCalls = 20;
+    }
+
+    if (this.circuitFailureRateThreshold == null) {
+      this.circuitFailureRateThreshold = 50;
+    }
+
+    if (this.circuitSlowCallDuration == null) {
+      this.circuitSlowCallDuration = 0L;
+    }
+
+    if (this.circuitOpenDuration == null) {
+      this.circuitOpenDuration = 30000L;
+    }
+
+    if (this.circuitHalfOpenCalls == null) {
+      this.circuitHalfOpenCalls = 3;
+    }
+
+    if (this.hedgePercentile == null) {
+      this.hedgePercentile = 95.0;
+    }
+
+    if (this.hedgeMinSamples == null) {
+      this.hedgeMinSamples = 100;
+    }
+
+    if (this.hedgeDefaultDelay == null) {
+      this.hedgeDefaultDelay = 100L;
+    }
+
+    if (this.hedgeMinDelay == null) {
+      this.hedgeMinDelay = 5L;
+    }
+
+    if (this.rateLimitPerSecond == null) {
+      this.rateLimitPerSecond = 0.0;
+    }
+
+    if (this.rateLimitBurst == null) {
+      this.rateLimitBurst = 0;
+    }
+
+    if (this.bulkheadMaxConcurrent == null) {
+      this.bulkheadMaxConcurrent = 0;
+    }
+
+    if (this.bulkheadMaxQueue == null) {
+      this.bulkheadMaxQueue = 100;
+    }
+
+    if (this.throttleMaxWait == null) {
+      this.throttleMaxWait = 1000L;
+    }
+
+    if (this.throttleMaxThreads == null) {
+      this.throttleMaxThreads = 200;
+    }
+  }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.HttpRequestSpec;
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.TypedHttpResult;
+import com.github.starvn.xstava.client.handler.UploadProgressListener;
+import com.github.starvn.xstava.client.service.ForwardingHttpClient;
+import com.github.starvn.xstava.client.service.HttpClient;
+import com.github.starvn.xstava.client.util.RouteUtil;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.cookie.BasicCookieStore;
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+
+/**
+ * Adds per-route retries and circuit breaking to a client. A result counts as failed when its
+ * status is the configured default code, 429 or any 5xx, or when the call was slower than the slow
+ * call duration. While a route's circuit is open, calls fail fast with 503. Streaming and downloads
+ * are passed through untouched.
+ *
+ * <p>All attempts of a call share one time budget: the hard timeout, the deadline of the {@link
+ * HttpRequestSpec} or the request deadline. Each attempt only gets what is left of it, and a call
+ * whose delegate cannot be given less than a whole request deadline is not retried once one is set.
+ * A {@code Retry-After} on 429 or 503 raises the backoff; one longer than the maximum backoff ends
+ * the retries. The delegate should be built with {@code automaticRetries} off, or its own retries
+ * of 429, 503 and I/O errors stack under these and bypass the retry budget.
+ */
+@Slf4j
+public class ResilientHttpClient extends ForwardingHttpClient {
+
+  private final ResilienceProperties resilienceProperties;
+  private final int defaultHttpCode;
+  private final long requestDeadline;
+  private final RetryPolicy defaultRetryPolicy;
+  private final ConcurrentMap<String, RetryPolicy> retryPolicies;
+  private final ConcurrentMap<String, RetryBudget> retryBudgets;
+  private final ConcurrentMap<String, CircuitBreaker> circuitBreakers;
+  private final LongAdder retryCount;
+  private final LongAdder budgetExhaustedCount;
+
+  public ResilientHttpClient(
+      HttpClient delegate,
+      HttpProperties httpProperties,
+      ResilienceProperties resilienceProperties) {
+    super(delegate);
+    this.resilienceProperties = resilienceProperties;
+    this.defaultHttpCode = httpProperties.getDefaultHttpCode();
+    this.requestDeadline = httpProperties.getRequestDeadline();
+    this.defaultRetryPolicy =
+        new ExponentialBackoffRetryPolicy(resilienceProperties, defaultHttpCode);
+    this.retryPolicies = new ConcurrentHashMap<>();
+    this.retryBudgets = new ConcurrentHashMap<>();
+    this.circuitBreakers = new ConcurrentHashMap<>();
+    this.retryCount = new LongAdder();
+    this.budgetExhaustedCount = new LongAdder();
+  }
+
+  public void setRetryPolicy(String url, RetryPolicy retryPolicy) {
+    retryPolicies.put(RouteUtil.getRoute(url), retryPolicy);
+  }
+
+  public CircuitBreaker getCircuitBreaker(String url) {
+    return circuitBreakers.computeIfAbsent(
+        RouteUtil.getRoute(url), route -> new CircuitBreaker(route, resilienceProperties));
+  }
+
+  public Map<String, CircuitBreaker> getCircuitBreakers() {
+    return Collections.unmodifiableMap(circuitBreakers);
+  }
+
+  public long getRetryCount() {
+    return retryCount.sum();
+  }
+
+  public long getBudgetExhaustedCount() {
+    return budgetExhaustedCount.sum();
+  }
+
+  @Override
+  public HttpResult post(String url, Map<String, String> headers, String entity) {
+    return call(HttpMethod.POST, url, () -> delegate.post(url, headers, entity));
+  }
+
+  @Override
+  public HttpResult post(String url, Map<String, String> headers, Map<String, String> params) {
+    return call(HttpMethod.POST, url, () -> delegate.post(url, headers, params));
+  }
+
+  @Override
+  public HttpResult query(HttpMethod method, String url, boolean allowRedirect) {
+    return call(method, url, () -> delegate.query(method, url, allowRedirect));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    return call(method, url, () -> delegate.query(method, url, allowRedirect, headers));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params) {
+    return call(method, url, () -> delegate.query(method, url, allowRedirect, headers, params));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      String entity) {
+    return call(method, url, () -> delegate.query(method, url, allowRedirect, headers, entity));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params,
+      String entity,
+      boolean isUseBasicAuthentication,
+      String username,
+      String password,
+      BasicCookieStore cookieStore) {
+    return call(
+        method,
+        url,
+        () ->
+            delegate.query(
+                method,
+                url,
+                allowRedirect,
+                headers,
+                params,
+                entity,
+                isUseBasicAuthentication,
+                username,
+                password,
+                cookieStore));
+  }
+
+  @Override
+  public HttpResult execute(HttpRequestSpec spec) {
+    long budget = spec.getDeadline() >= 0 ? spec.getDeadline() : requestDeadline;
+    return call(
+        spec.getMethod(),
+        spec.getUrl(),
+        remaining ->
+            delegate.execute(budget > 0 ? spec.toBuilder().deadline(remaining).build() : spec),
+        () -> new HttpResult(HttpStatus.SC_SERVICE_UNAVAILABLE),
+        spec.isRepeatable(),
+        budget,
+        1);
+  }
+
+  @Override
+  public HttpResult queryForBytes(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    return call(method, url, () -> delegate.queryForBytes(method, url, allowRedirect, headers));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, Class<T> type) {
+    return typedCall(method, url, () -> delegate.query(method, url, headers, type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, TypeReference<T> type) {
+    return typedCall(method, url, () -> delegate.query(method, url, headers, type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> exchange(
+      HttpMethod method, String url, Map<String, String> headers, Object body, Class<T> type) {
+    return typedCall(method, url, () -> delegate.exchange(method, url, headers, body, type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> exchange(
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      Object body,
+      TypeReference<T> type) {
+    return typedCall(method, url, () -> delegate.exchange(method, url, headers, body, type));
+  }
+
+  @Override
+  public HttpResult query(String url, int hardTimeout) {
+    return hardTimeoutCall(url, hardTimeout, seconds -> delegate.query(url, seconds));
+  }
+
+  @Override
+  public HttpResult query(String url, int hardTimeout, boolean isLazy) {
+    return hardTimeoutCall(url, hardTimeout, seconds -> delegate.query(url, seconds, isLazy));
+  }
+
+  @Override
+  public HttpResult upload(
+      String url, Map<String, String> headers, Map<String, String> params, String filepath) {
+    return call(HttpMethod.POST, url, () -> delegate.upload(url, headers, params, filepath));
+  }
+
+  @Override
+  public HttpResult upload(
+      String url,
+      Map<String, String> headers,
+      Map<String, String> params,
+      Map<String, String> files,
+      UploadProgressListener listener) {
+    return call(HttpMethod.POST, url, () -> delegate.upload(url, headers, params, files, listener));
+  }
+
+  private HttpResult call(HttpMethod method, String url, Supplier<HttpResult> call) {
+    return call(method, url, call, () -> new HttpResult(HttpStatus.SC_SERVICE_UNAVAILABLE));
+  }
+
+  private <T> TypedHttpResult<T> typedCall(
+      HttpMethod method, String url, Supplier<TypedHttpResult<T>> call) {
+    return call(method, url, call, () -> new TypedHttpResult<>(HttpStatus.SC_SERVICE_UNAVAILABLE));
+  }
+
+  /** The hard timeout is in seconds, so an attempt needs at least one whole second of budget. */
+  private HttpResult hardTimeoutCall(String url, int hardTimeout, IntFunction<HttpResult> call) {
+    return call(
+        HttpMethod.GET,
+        url,
+        remaining -> call.apply((int) (remaining / 1000L)),
+        () -> new HttpResult(HttpStatus.SC_SERVICE_UNAVAILABLE),
+        true,
+        hardTimeout * 1000L,
+        1000L);
+  }
+
+  /** Each attempt runs with the full request deadline, so one is retried only while that fits. */
+  private <R extends HttpResult> R call(
+      HttpMethod method, String url, Supplier<R> call, Supplier<R> rejected) {
+    return call(
+        method,
+        url,
+        remaining -> call.get(),
+        rejected,
+        true,
+        requestDeadline,
+        Math.max(1L, requestDeadline));
+  }
+
+  /**
+   * Calls with retries. {@code call} gets the milliseconds left of {@code budgetMillis}, or 0
+   * without a budget; another attempt is only made while at least {@code minAttemptMillis} are left
+   * after its backoff.
+   */
+  private <R extends HttpResult> R call(
+      HttpMethod method,
+      String url,
+      LongFunction<R> call,
+      Supplier<R> rejected,
+      boolean retryable,
+      long budgetMillis,
+      long minAttemptMillis) {
+    String route = RouteUtil.getRoute(url);
+    CircuitBreaker circuitBreaker = getCircuitBreaker(url);
+    RetryPolicy retryPolicy = retryPolicies.getOrDefault(route, defaultRetryPolicy);
+    RetryBudget retryBudget =
+        retryBudgets.computeIfAbsent(
+            route,
+            key ->
+                new RetryBudget(
+                    resilienceProperties.getRetryBudgetRatio(),
+                    resilienceProperties.getRetryBudgetMinPerSecond()));
+    retryBudget.deposit();
+
+    long begin = System.nanoTime();
+    for (int attempt = 1; ; attempt++) {
+      if (!circuitBreaker.tryAcquire()) {
+        log.warn("(call) url: {}|circuit {} is open", url, route);
+        return rejected.get();
+      }
+
+      long remaining =
+          budgetMillis <= 0 ? 0 : attempt == 1 ? budgetMillis : budgetMillis - elapsedMillis(begin);
+      long start = System.nanoTime();
+      R result;
+      try {
+        result = call.apply(remaining);
+      } catch (RuntimeException | Error ex) {
+        // a thrown call still has to hand back its half-open permit
+        circuitBreaker.onResult(true);
+        throw ex;
+      }
+      long elapsed = elapsedMillis(start);
+      boolean failed = isFailure(result);
+      long slowCallDuration = resilienceProperties.getCircuitSlowCallDuration();
+      circuitBreaker.onResult(failed || (slowCallDuration > 0 && elapsed >= slowCallDuration));
+
+      if (!failed || !retryable || !retryPolicy.shouldRetry(method, attempt, result)) {
+        return result;
+      }
+
+      long backoff = getBackoff(retryPolicy, attempt, result);
+      if (backoff < 0) {
+        log.debug("(call) url: {}|Retry-After exceeds the maximum backoff", url);
+        return result;
+      }
+      // a timed out attempt used up the rest of the budget, so it is never retried
+      if (budgetMillis > 0 && budgetMillis - elapsedMillis(begin) - backoff < minAttemptMillis) {
+        return result;
+      }
+      if (!retryBudget.tryWithdraw()) {
+        budgetExhaustedCount.increment();
+        return result;
+      }
+
+      retryCount.increment();
+      try {
+        Thread.sleep(backoff);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return result;
+      }
+    }
+  }
+
+  /**
+   * Backoff of the policy, raised to the {@code Retry-After} of a 429 or 503; negative when that is
+   * longer than the maximum backoff.
+   */
+  private long getBackoff(RetryPolicy retryPolicy, int attempt, HttpResult result) {
+    long backoff = retryPolicy.getBackoff(attempt);
+    int statusCode = result.getStatusCode();
+    if (statusCode != HttpStatus.SC_TOO_MANY_REQUESTS
+        && statusCode != HttpStatus.SC_SERVICE_UNAVAILABLE) {
+      return backoff;
+    }
+
+    long retryAfter = getRetryAfter(result);
+    if (retryAfter > resilienceProperties.getRetryMaxBackoff()) {
+      return -1;
+    }
+    return Math.max(backoff, retryAfter);
+  }
+
+  /** Milliseconds of the {@code Retry-After} header, given in seconds or as a date, or 0. */
+  private static long getRetryAfter(HttpResult result) {
+    if (result.getHeaders() == null) {
+      return 0;
+    }
+
+    for (Map.Entry<String, String> header : result.getHeaders().entries()) {
+      if (!HttpHeaders.RETRY_AFTER.equalsIgnoreCase(header.getKey())) {
+        continue;
+      }
+
+      String value = header.getValue().trim();
+      try {
+        return Math.max(0, Long.parseLong(value) * 1000L);
+      } catch (NumberFormatException ex) {
+        Instant date = DateUtils.parseStandardDate(value);
+        return date != null ? Math.max(0, Duration.between(Instant.now(), date).toMillis()) : 0;
+      }
+    }
+    return 0;
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1_000_000L;
+  }
+
+  private boolean isFailure(HttpResult result) {
+    if (result == null || result.getStatusCode() == null) {
+      return true;
+    }
+
+    int statusCode = result.getStatusCode();
+    return statusCode == defaultHttpCode
+        || statusCode == HttpStatus.SC_TOO_MANY_REQUESTS
+        || statusCode >= HttpStatus.SC_SERVER_ERROR;
+  }
+}
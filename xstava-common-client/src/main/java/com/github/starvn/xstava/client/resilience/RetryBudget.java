@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+/**
+ * Caps retries to a ratio of the request rate, plus a small floor per second, so retries cannot
+ * multiply the load on an upstream that is already failing.
+ */
+public class RetryBudget {
+
+  private final double ratio;
+  private final int minPerSecond;
+  private final double maxBalance;
+  private double balance;
+  private long windowStart;
+  private int windowRetries;
+
+  public RetryBudget(double ratio, int minPerSecond) {
+    this.ratio = ratio;
+    this.minPerSecond = minPerSecond;
+    this.maxBalance = Math.max(1, ratio * 100);
+    this.windowStart = System.nanoTime();
+  }
+
+  public synchronized void deposit() {
+    balance = Math.min(maxBalance, balance + ratio);
+  }
+
+  public synchronized boolean tryWithdraw() {
+    long now = System.nanoTime();
+    if (now - windowStart >= 1_000_000_000L) {
+      windowStart = now;
+      windowRetries = 0;
+    }
+
+    if (windowRetries < minPerSecond) {
+      windowRetries++;
+      return true;
+    }
+
+    if (balance >= 1) {
+      balance -= 1;
+      return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpResult;
+
+/** Decides whether a failed attempt is retried and how long to wait before the next one. */
+public interface RetryPolicy {
+
+  RetryPolicy NONE =
+      new RetryPolicy() {
+        @Override
+        public boolean shouldRetry(HttpMethod method, int attempt, HttpResult result) {
+          return false;
+        }
+
+        @Override
+        public long getBackoff(int attempt) {
+          return 0;
+        }
+      };
+
+  boolean shouldRetry(HttpMethod method, int attempt, HttpResult result);
+
+  long getBackoff(int attempt);
+}
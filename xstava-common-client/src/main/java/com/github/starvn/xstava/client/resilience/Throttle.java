@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.util.RouteUtil;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.core5.http.HttpStatus;
+
+/**
+ * Per-route token buckets and bulkheads shared by {@link ThrottledHttpClient} and {@link
+ * ThrottledAsyncHttpClient}. A call first reserves a token, then takes a bulkhead permit; a token
+ * whose call is rejected by the bulkhead is refunded, and a permit is released however the call
+ * ends, including when it could not be dispatched at all.
+ */
+@Slf4j
+class Throttle {
+
+  private static final CompletableFuture<Void> ACQUIRED = CompletableFuture.completedFuture(null);
+
+  private final ResilienceProperties resilienceProperties;
+  private final ConcurrentMap<String, RateLimiter> rateLimiters;
+  private final ConcurrentMap<String, Bulkhead> bulkheads;
+  private final LongAdder rejectedCount;
+
+  Throttle(ResilienceProperties resilienceProperties) {
+    this.resilienceProperties = resilienceProperties;
+    this.rateLimiters = new ConcurrentHashMap<>();
+    this.bulkheads = new ConcurrentHashMap<>();
+    this.rejectedCount = new LongAdder();
+  }
+
+  void setRateLimit(String url, double permitsPerSecond, int burst) {
+    String route = RouteUtil.getRoute(url);
+    rateLimiters.put(route, new RateLimiter(route, permitsPerSecond, burst));
+  }
+
+  void setBulkhead(String url, int maxConcurrent, int maxQueue) {
+    String route = RouteUtil.getRoute(url);
+    bulkheads.put(route, new Bulkhead(route, maxConcurrent, maxQueue));
+  }
+
+  Map<String, RateLimiter> getRateLimiters() {
+    return Collections.unmodifiableMap(rateLimiters);
+  }
+
+  Map<String, Bulkhead> getBulkheads() {
+    return Collections.unmodifiableMap(bulkheads);
+  }
+
+  int getQueueDepth() {
+    return rateLimiters.values().stream().mapToInt(RateLimiter::getQueueDepth).sum()
+        + bulkheads.values().stream().mapToInt(Bulkhead::getQueueDepth).sum();
+  }
+
+  long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  /** Blocks for at most the configured wait, then runs {@code call} or answers {@code rejected}. */
+  <R> R call(String url, Supplier<R> call, Supplier<R> rejected) {
+    String route = RouteUtil.getRoute(url);
+    long maxWaitNanos = resilienceProperties.getThrottleMaxWait() * 1_000_000L;
+    RateLimiter rateLimiter = getRateLimiter(route);
+    long waitNanos = rateLimiter != null ? rateLimiter.reserve(maxWaitNanos) : 0;
+    if (waitNanos < 0) {
+      reject(url, route);
+      return rejected.get();
+    }
+
+    if (waitNanos > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        refund(rateLimiter);
+        return rejected.get();
+      }
+    }
+
+    Bulkhead bulkhead = getBulkhead(route);
+    if (bulkhead == null) {
+      return call.get();
+    }
+    if (!bulkhead.tryAcquire((maxWaitNanos - waitNanos) / 1_000_000L)) {
+      refund(rateLimiter);
+      reject(url, route);
+      return rejected.get();
+    }
+    try {
+      return call.get();
+    } finally {
+      bulkhead.release();
+    }
+  }
+
+  /**
+   * Starts {@code call} once the route has a token and a free permit, waiting without holding a
+   * thread; completes with 429 when the wait would exceed the limit.
+   */
+  CompletableFuture<HttpResult> callAsync(
+      String url, Supplier<CompletableFuture<HttpResult>> call) {
+    String route = RouteUtil.getRoute(url);
+    long maxWaitNanos = resilienceProperties.getThrottleMaxWait() * 1_000_000L;
+    RateLimiter rateLimiter = getRateLimiter(route);
+    long waitNanos = rateLimiter != null ? rateLimiter.reserve(maxWaitNanos) : 0;
+    if (waitNanos < 0) {
+      return CompletableFuture.completedFuture(reject(url, route));
+    }
+
+    CompletableFuture<HttpResult> result = new CompletableFuture<>();
+    long maxPermitWaitMillis = (maxWaitNanos - waitNanos) / 1_000_000L;
+    Runnable admit = () -> admit(url, route, rateLimiter, maxPermitWaitMillis, call, result);
+    if (waitNanos > 0) {
+      // the delayed task only queues for a permit, so the common pool is enough to run it
+      CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS).execute(admit);
+    } else {
+      admit.run();
+    }
+    return result;
+  }
+
+  private void admit(
+      String url,
+      String route,
+      RateLimiter rateLimiter,
+      long maxPermitWaitMillis,
+      Supplier<CompletableFuture<HttpResult>> call,
+      CompletableFuture<HttpResult> result) {
+    Bulkhead bulkhead = getBulkhead(route);
+    CompletableFuture<Void> permit =
+        bulkhead != null ? bulkhead.acquireAsync(maxPermitWaitMillis) : ACQUIRED;
+    permit.whenComplete(
+        (ignored, ex) -> {
+          if (ex != null) {
+            refund(rateLimiter);
+            result.complete(reject(url, route));
+            return;
+          }
+
+          CompletableFuture<HttpResult> response;
+          try {
+            response = call.get();
+          } catch (RuntimeException | Error callEx) {
+            // e.g. the executor was shut down, so the call never went out
+            release(bulkhead);
+            refund(rateLimiter);
+            result.completeExceptionally(callEx);
+            return;
+          }
+          response.whenComplete(
+              (value, callEx) -> {
+                release(bulkhead);
+                if (callEx != null) {
+                  result.completeExceptionally(callEx);
+                } else {
+                  result.complete(value);
+                }
+              });
+          result.whenComplete(
+              (value, resultEx) -> {
+                if (result.isCancelled()) {
+                  response.cancel(true);
+                }
+              });
+        });
+  }
+
+  private RateLimiter getRateLimiter(String route) {
+    RateLimiter rateLimiter = rateLimiters.get(route);
+    if (rateLimiter == null && resilienceProperties.getRateLimitPerSecond() > 0) {
+      rateLimiter =
+          rateLimiters.computeIfAbsent(
+              route,
+              key ->
+                  new RateLimiter(
+                      key,
+                      resilienceProperties.getRateLimitPerSecond(),
+                      resilienceProperties.getRateLimitBurst()));
+    }
+    return rateLimiter;
+  }
+
+  private Bulkhead getBulkhead(String route) {
+    Bulkhead bulkhead = bulkheads.get(route);
+    if (bulkhead == null && resilienceProperties.getBulkheadMaxConcurrent() > 0) {
+      bulkhead =
+          bulkheads.computeIfAbsent(
+              route,
+              key ->
+                  new Bulkhead(
+                      key,
+                      resilienceProperties.getBulkheadMaxConcurrent(),
+                      resilienceProperties.getBulkheadMaxQueue()));
+    }
+    return bulkhead;
+  }
+
+  private static void refund(RateLimiter rateLimiter) {
+    if (rateLimiter != null) {
+      rateLimiter.refund();
+    }
+  }
+
+  private static void release(Bulkhead bulkhead) {
+    if (bulkhead != null) {
+      bulkhead.release();
+    }
+  }
+
+  private HttpResult reject(String url, String route) {
+    rejectedCount.increment();
+    log.warn("(call) url: {}|throttled on {}", url, route);
+    return new HttpResult(HttpStatus.SC_TOO_MANY_REQUESTS);
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.service.AsyncHttpClient;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.apache.hc.client5.http.cookie.BasicCookieStore;
+
+/**
+ * Async counterpart of {@link ThrottledHttpClient}: calls wait for a token and a bulkhead permit
+ * without holding a thread and complete with 429 when the wait would exceed the limit. The permit
+ * is held until the returned future completes.
+ */
+public class ThrottledAsyncHttpClient implements AsyncHttpClient {
+
+  private final AsyncHttpClient delegate;
+  private final Throttle throttle;
+
+  public ThrottledAsyncHttpClient(
+      AsyncHttpClient delegate, ResilienceProperties resilienceProperties) {
+    this.delegate = delegate;
+    this.throttle = new Throttle(resilienceProperties);
+  }
+
+  public void setRateLimit(String url, double permitsPerSecond, int burst) {
+    throttle.setRateLimit(url, permitsPerSecond, burst);
+  }
+
+  public void setBulkhead(String url, int maxConcurrent, int maxQueue) {
+    throttle.setBulkhead(url, maxConcurrent, maxQueue);
+  }
+
+  public Map<String, RateLimiter> getRateLimiters() {
+    return throttle.getRateLimiters();
+  }
+
+  public Map<String, Bulkhead> getBulkheads() {
+    return throttle.getBulkheads();
+  }
+
+  /** Callers currently waiting for a token or a permit, over all routes. */
+  public int getQueueDepth() {
+    return throttle.getQueueDepth();
+  }
+
+  public long getRejectedCount() {
+    return throttle.getRejectedCount();
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> download(String url, String storageFolder) {
+    return throttle.callAsync(url, () -> delegate.download(url, storageFolder));
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> post(
+      String url, Map<String, String> headers, String entity) {
+    return throttle.callAsync(url, () -> delegate.post(url, headers, entity));
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> post(
+      String url, Map<String, String> headers, Map<String, String> params) {
+    return throttle.callAsync(url, () -> delegate.post(url, headers, params));
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(HttpMethod method, String url, boolean allowRedirect) {
+    return throttle.callAsync(url, () -> delegate.query(method, url, allowRedirect));
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    return throttle.callAsync(url, () -> delegate.query(method, url, allowRedirect, headers));
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params) {
+    return throttle.callAsync(
+        url, () -> delegate.query(method, url, allowRedirect, headers, params));
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      String entity) {
+    return throttle.callAsync(
+        url, () -> delegate.query(method, url, allowRedirect, headers, entity));
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params,
+      String entity,
+      boolean isUseBasicAuthentication,
+      String username,
+      String password,
+      BasicCookieStore cookieStore) {
+    return throttle.callAsync(
+        url,
+        () ->
+            delegate.query(
+                method,
+                url,
+                allowRedirect,
+                headers,
+                params,
+                entity,
+                isUseBasicAuthentication,
+                username,
+                password,
+                cookieStore));
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(String url, int hardTimeout) {
+    return throttle.callAsync(url, () -> delegate.query(url, hardTimeout));
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> upload(
+      String url, Map<String, String> headers, Map<String, String> params, String filepath) {
+    return throttle.callAsync(url, () -> delegate.upload(url, headers, params, filepath));
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+}
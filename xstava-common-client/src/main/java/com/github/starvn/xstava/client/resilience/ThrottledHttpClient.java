@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.resilience;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpRequestSpec;
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.TypedHttpResult;
+import com.github.starvn.xstava.client.handler.HttpResponseConsumer;
+import com.github.starvn.xstava.client.handler.UploadProgressListener;
+import com.github.starvn.xstava.client.service.ForwardingHttpClient;
+import com.github.starvn.xstava.client.service.HttpClient;
+import com.github.starvn.xstava.client.util.ExecutorUtil;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+import org.apache.hc.client5.http.cookie.BasicCookieStore;
+import org.apache.hc.core5.http.HttpStatus;
+
+/**
+ * Smooths outbound traffic with a per-route token bucket and bounds it with a per-route bulkhead.
+ * Blocking calls wait at most the configured time for both and are answered with 429 otherwise;
+ * {@link #submit} waits without holding a thread. Routes get the defaults from {@link
+ * ResilienceProperties} unless configured with {@link #setRateLimit} or {@link #setBulkhead}.
+ */
+public class ThrottledHttpClient extends ForwardingHttpClient {
+
+  private final Throttle throttle;
+  private final ExecutorService executor;
+
+  public ThrottledHttpClient(HttpClient delegate, ResilienceProperties resilienceProperties) {
+    super(delegate);
+    this.throttle = new Throttle(resilienceProperties);
+    this.executor =
+        ExecutorUtil.newVirtualThreadPerTaskExecutor(
+            "xstava-throttle", resilienceProperties.getThrottleMaxThreads());
+  }
+
+  public void setRateLimit(String url, double permitsPerSecond, int burst) {
+    throttle.setRateLimit(url, permitsPerSecond, burst);
+  }
+
+  public void setBulkhead(String url, int maxConcurrent, int maxQueue) {
+    throttle.setBulkhead(url, maxConcurrent, maxQueue);
+  }
+
+  public Map<String, RateLimiter> getRateLimiters() {
+    return throttle.getRateLimiters();
+  }
+
+  public Map<String, Bulkhead> getBulkheads() {
+    return throttle.getBulkheads();
+  }
+
+  /** Callers currently waiting for a token or a permit, over all routes. */
+  public int getQueueDepth() {
+    return throttle.getQueueDepth();
+  }
+
+  public long getRejectedCount() {
+    return throttle.getRejectedCount();
+  }
+
+  public CompletableFuture<HttpResult> submit(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    return submit(url, () -> delegate.query(method, url, allowRedirect, headers));
+  }
+
+  /**
+   * Runs {@code call} once the route has a token and a free permit. Waiting is scheduled rather
+   * than blocking; the future completes with 429 when the wait would exceed the limit.
+   */
+  public CompletableFuture<HttpResult> submit(String url, Supplier<HttpResult> call) {
+    return throttle.callAsync(url, () -> CompletableFuture.supplyAsync(call, executor));
+  }
+
+  @Override
+  public HttpResult download(String url, String storageFolder) {
+    return call(url, () -> delegate.download(url, storageFolder));
+  }
+
+  @Override
+  public HttpResult post(String url, Map<String, String> headers, String entity) {
+    return call(url, () -> delegate.post(url, headers, entity));
+  }
+
+  @Override
+  public HttpResult post(String url, Map<String, String> headers, Map<String, String> params) {
+    return call(url, () -> delegate.post(url, headers, params));
+  }
+
+  @Override
+  public HttpResult query(HttpMethod method, String url, boolean allowRedirect) {
+    return call(url, () -> delegate.query(method, url, allowRedirect));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    return call(url, () -> delegate.query(method, url, allowRedirect, headers));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params) {
+    return call(url, () -> delegate.query(method, url, allowRedirect, headers, params));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      String entity) {
+    return call(url, () -> delegate.query(method, url, allowRedirect, headers, entity));
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params,
+      String entity,
+      boolean isUseBasicAuthentication,
+      String username,
+      String password,
+      BasicCookieStore cookieStore) {
+    return call(
+        url,
+        () ->
+            delegate.query(
+                method,
+                url,
+                allowRedirect,
+                headers,
+                params,
+                entity,
+                isUseBasicAuthentication,
+                username,
+                password,
+                cookieStore));
+  }
+
+  @Override
+  public HttpResult execute(HttpRequestSpec spec) {
+    return call(spec.getUrl(), () -> delegate.execute(spec));
+  }
+
+  @Override
+  public HttpResult queryForBytes(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    return call(url, () -> delegate.queryForBytes(method, url, allowRedirect, headers));
+  }
+
+  @Override
+  public <T> T stream(
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      String entity,
+      HttpResponseConsumer<T> consumer) {
+    return call(url, () -> delegate.stream(method, url, headers, entity, consumer), () -> null);
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, Class<T> type) {
+    return typedCall(url, () -> delegate.query(method, url, headers, type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, TypeReference<T> type) {
+    return typedCall(url, () -> delegate.query(method, url, headers, type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> exchange(
+      HttpMethod method, String url, Map<String, String> headers, Object body, Class<T> type) {
+    return typedCall(url, () -> delegate.exchange(method, url, headers, body, type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> exchange(
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      Object body,
+      TypeReference<T> type) {
+    return typedCall(url, () -> delegate.exchange(method, url, headers, body, type));
+  }
+
+  @Override
+  public HttpResult query(String url, int hardTimeout) {
+    return call(url, () -> delegate.query(url, hardTimeout));
+  }
+
+  @Override
+  public HttpResult query(String url, int hardTimeout, boolean isLazy) {
+    return call(url, () -> delegate.query(url, hardTimeout, isLazy));
+  }
+
+  @Override
+  public HttpResult upload(
+      String url, Map<String, String> headers, Map<String, String> params, String filepath) {
+    return call(url, () -> delegate.upload(url, headers, params, filepath));
+  }
+
+  @Override
+  public HttpResult upload(
+      String url,
+      Map<String, String> headers,
+      Map<String, String> params,
+      Map<String, String> files,
+      UploadProgressListener listener) {
+    return call(url, () -> delegate.upload(url, headers, params, files, listener));
+  }
+
+  @Override
+  public void close() throws IOException {
+    executor.shutdown();
+    super.close();
+  }
+
+  private HttpResult call(String url, Supplier<HttpResult> call) {
+    return call(url, call, () -> new HttpResult(HttpStatus.SC_TOO_MANY_REQUESTS));
+  }
+
+  private <T> TypedHttpResult<T> typedCall(String url, Supplier<TypedHttpResult<T>> call) {
+    return call(url, call, () -> new TypedHttpResult<>(HttpStatus.SC_TOO_MANY_REQUESTS));
+  }
+
+  private <R> R call(String url, Supplier<R> call, Supplier<R> rejected) {
+    return throttle.call(url, call, rejected);
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.starvn.xstava.client.scheduler;
+
+import java.util.concurrent.ScheduledFuture;
+
+public final class Deadline implements AutoCloseable {
+
+  static final Deadline NONE = new Deadline();
+
+  private volatile ScheduledFuture<?> task;
+  private volatile boolean expired;
+
+  Deadline() {}
+
+  void setTask(ScheduledFuture<?> task) {
+    this.task = task;
+  }
+
+  void expire() {
+    expired = true;
+  }
+
+  public boolean isExpired() {
+    return expired;
+  }
+
+  @Override
+  public void close() {
+    ScheduledFuture<?> scheduled = task;
+    if (scheduled != null) {
+      scheduled.cancel(false);
+    }
+  }
+}
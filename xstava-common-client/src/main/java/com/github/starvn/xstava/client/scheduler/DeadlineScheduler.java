@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.starvn.xstava.client.scheduler;
+
+import com.github.starvn.xstava.util.ExceptionUtil;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.core5.concurrent.Cancellable;
+
+/**
+ * Aborts requests that outlive their deadline. A single shared timer thread serves every client;
+ * completed requests must close their {@link Deadline} so the pending task is removed right away.
+ */
+@Slf4j
+public final class DeadlineScheduler {
+
+  private static final DeadlineScheduler ourInstance = new DeadlineScheduler();
+  private final ScheduledThreadPoolExecutor executor;
+
+  private DeadlineScheduler() {
+    executor =
+        new ScheduledThreadPoolExecutor(
+            1,
+            new ThreadFactoryBuilder().setNameFormat("xstava-deadline-%d").setDaemon(true).build());
+    executor.setRemoveOnCancelPolicy(true);
+  }
+
+  public static DeadlineScheduler getInstance() {
+    return ourInstance;
+  }
+
+  public Deadline schedule(Cancellable cancellable, long timeoutMillis) {
+    if (timeoutMillis <= 0) {
+      return Deadline.NONE;
+    }
+
+    Deadline deadline = new Deadline();
+    deadline.setTask(
+        executor.schedule(
+            () -> {
+              deadline.expire();
+              try {
+                cancellable.cancel();
+              } catch (Exception ex) {
+                log.error("(schedule) ex: {}", ExceptionUtil.getFullStackTrace(ex, true));
+              }
+            },
+            timeoutMillis,
+            TimeUnit.MILLISECONDS));
+    return deadline;
+  }
+
+  public int getPendingCount() {
+    return executor.getQueue().size();
+  }
+}
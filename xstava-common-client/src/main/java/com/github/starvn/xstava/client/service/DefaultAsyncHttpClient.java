@@ -0,0 +1,489 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.starvn.xstava.client.service;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.handler.FileResponseConsumer;
+import com.github.starvn.xstava.client.handler.HttpResultResponseHandler;
+import com.github.starvn.xstava.client.metrics.HttpErrorClass;
+import com.github.starvn.xstava.client.metrics.HttpMetricsListener;
+import com.github.starvn.xstava.client.metrics.HttpRequestMetrics;
+import com.github.starvn.xstava.client.scheduler.Deadline;
+import com.github.starvn.xstava.client.scheduler.DeadlineScheduler;
+import com.github.starvn.xstava.client.util.ContentEncodingUtil;
+import com.github.starvn.xstava.client.util.ExecutorUtil;
+import com.github.starvn.xstava.client.util.MultipartUtil;
+import com.github.starvn.xstava.util.ExceptionUtil;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.cookie.BasicCookieStore;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.utils.Base64;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http.nio.support.classic.AbstractClassicEntityProducer;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+
+@Slf4j
+public class DefaultAsyncHttpClient implements AsyncHttpClient {
+
+  private static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
+
+  private final HttpProperties httpProperties;
+  private final RequestConfig redirectRequestConfig;
+  private final RequestConfig noRedirectRequestConfig;
+  private final String acceptEncoding;
+  private final CloseableHttpAsyncClient httpClient;
+  private final ExecutorService uploadExecutor;
+  private final List<HttpMetricsListener> metricsListeners;
+
+  public DefaultAsyncHttpClient(HttpProperties httpProperties) {
+    this.httpProperties = httpProperties;
+    this.metricsListeners = new CopyOnWriteArrayList<>();
+    this.acceptEncoding =
+        Boolean.TRUE.equals(httpProperties.getContentCompression())
+            ? String.join(
+                ", ", ContentEncodingUtil.getDecoders(httpProperties.getAcceptEncodings()).keySet())
+            : null;
+    this.redirectRequestConfig = HttpClientConfigs.requestConfig(httpProperties, true);
+    this.noRedirectRequestConfig = HttpClientConfigs.requestConfig(httpProperties, false);
+    this.httpClient = createHttpClient();
+    this.httpClient.start();
+    this.uploadExecutor =
+        ExecutorUtil.newVirtualThreadPerTaskExecutor(
+            "xstava-async-upload", httpProperties.getMaxConnTotal());
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> download(String url, String storageFolder) {
+    AsyncRequestProducer producer = AsyncRequestBuilder.get(url).build();
+    AsyncResponseConsumer<Message<HttpResponse, File>> consumer =
+        new FileResponseConsumer(new File(storageFolder));
+
+    return execute(
+        "download",
+        HttpMethod.GET.name(),
+        url,
+        producer,
+        consumer,
+        createContext(false, null),
+        response -> new HttpResult(response.getHead().getCode()));
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> post(
+      String url, Map<String, String> headers, String entity) {
+    return query(HttpMethod.POST, url, false, headers, null, entity, false, null, null, null);
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> post(
+      String url, Map<String, String> headers, Map<String, String> params) {
+    return query(HttpMethod.POST, url, false, headers, params, null, false, null, null, null);
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(HttpMethod method, String url, boolean allowRedirect) {
+    return query(method, url, allowRedirect, null);
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    return query(method, url, allowRedirect, headers, null, null, false, null, null, null);
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params) {
+    return query(method, url, allowRedirect, headers, params, null, false, null, null, null);
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      String entity) {
+    return query(method, url, allowRedirect, headers, null, entity, false, null, null, null);
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params,
+      String entity,
+      boolean isUseBasicAuthentication,
+      String username,
+      String password,
+      BasicCookieStore cookieStore) {
+    SimpleRequestBuilder builder = createRequestBuilder(toMethodName(method), url);
+    setBasicAuthenticationHeader(builder, isUseBasicAuthentication, username, password);
+    setHeaders(builder, headers);
+    if (method != HttpMethod.GET && method != HttpMethod.HEAD && method != HttpMethod.DELETE) {
+      if (entity != null) {
+        setBody(builder, entity, ContentType.parse(StandardCharsets.UTF_8.name()));
+      } else if (params != null) {
+        params.forEach(builder::addParameter);
+      }
+    }
+
+    return execute("query", builder.build(), createContext(allowRedirect, cookieStore));
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> query(String url, int hardTimeout) {
+    SimpleHttpRequest request = createRequestBuilder(HttpMethod.GET.name(), url).build();
+    return execute(
+        "query",
+        request.getMethod(),
+        url,
+        SimpleRequestProducer.create(request),
+        SimpleResponseConsumer.create(),
+        createContext(true, null),
+        this::toHttpResult,
+        hardTimeout * 1000L);
+  }
+
+  @Override
+  public CompletableFuture<HttpResult> upload(
+      String url, Map<String, String> headers, Map<String, String> params, String filepath) {
+    try {
+      // same multipart body as the blocking client, streamed from a worker thread
+      HttpEntity entity =
+          MultipartUtil.create(
+              params,
+              filepath != null
+                  ? Collections.singletonMap(MultipartUtil.DEFAULT_FILE_PART, filepath)
+                  : null);
+      AsyncEntityProducer producer =
+          new AbstractClassicEntityProducer(
+              UPLOAD_BUFFER_SIZE, ContentType.parse(entity.getContentType()), uploadExecutor) {
+            @Override
+            protected void produceData(ContentType contentType, OutputStream outputStream)
+                throws IOException {
+              entity.writeTo(outputStream);
+            }
+          };
+      AsyncRequestBuilder builder = AsyncRequestBuilder.post(url).setEntity(producer);
+      if (headers != null) {
+        headers.forEach(builder::setHeader);
+      }
+      builder.removeHeaders(HttpHeaders.CONTENT_TYPE);
+      return execute(
+          "upload",
+          HttpMethod.POST.name(),
+          url,
+          builder.build(),
+          SimpleResponseConsumer.create(),
+          createContext(false, null),
+          this::toHttpResult);
+    } catch (Exception ex) {
+      log.error("(upload) url: " + url + "|" + ExceptionUtil.getFullStackTrace(ex, true));
+      return CompletableFuture.completedFuture(new HttpResult(httpProperties.getDefaultHttpCode()));
+    }
+  }
+
+  /** Listeners are called on the I/O reactor or deadline thread that completes the request. */
+  public void addMetricsListener(HttpMetricsListener listener) {
+    metricsListeners.add(listener);
+  }
+
+  public void removeMetricsListener(HttpMetricsListener listener) {
+    metricsListeners.remove(listener);
+  }
+
+  @Override
+  public void close() {
+    httpClient.close(CloseMode.GRACEFUL);
+    uploadExecutor.shutdown();
+  }
+
+  private CompletableFuture<HttpResult> execute(
+      String operation, SimpleHttpRequest request, HttpClientContext context) {
+    return execute(
+        operation,
+        request.getMethod(),
+        request.getScheme() + "://" + request.getAuthority() + request.getRequestUri(),
+        SimpleRequestProducer.create(request),
+        SimpleResponseConsumer.create(),
+        context,
+        this::toHttpResult);
+  }
+
+  private <T> CompletableFuture<HttpResult> execute(
+      String operation,
+      String method,
+      String url,
+      AsyncRequestProducer producer,
+      AsyncResponseConsumer<T> consumer,
+      HttpClientContext context,
+      Function<T, HttpResult> mapper) {
+    return execute(
+        operation,
+        method,
+        url,
+        producer,
+        consumer,
+        context,
+        mapper,
+        httpProperties.getRequestDeadline());
+  }
+
+  private <T> CompletableFuture<HttpResult> execute(
+      String operation,
+      String method,
+      String url,
+      AsyncRequestProducer producer,
+      AsyncResponseConsumer<T> consumer,
+      HttpClientContext context,
+      Function<T, HttpResult> mapper,
+      long deadlineMillis) {
+    HttpRequestMetrics metrics =
+        HttpMetricsInstrumentation.beginAsync(metricsListeners, operation, method, url, context);
+    CompletableFuture<HttpResult> result = new CompletableFuture<>();
+    Future<T> future =
+        httpClient.execute(
+            producer,
+            consumer,
+            null,
+            context,
+            new FutureCallback<>() {
+              @Override
+              public void completed(T response) {
+                try {
+                  result.complete(mapper.apply(response));
+                } catch (Exception ex) {
+                  failed(ex);
+                }
+              }
+
+              @Override
+              public void failed(Exception ex) {
+                setErrorClass(metrics, HttpErrorClass.of(ex));
+                log.error(
+                    "("
+                        + operation
+                        + ") url: "
+                        + url
+                        + "|"
+                        + ExceptionUtil.getFullStackTrace(ex, true));
+                result.complete(new HttpResult(httpProperties.getDefaultHttpCode()));
+              }
+
+              @Override
+              public void cancelled() {
+                setErrorClass(metrics, HttpErrorClass.CANCELLED);
+                result.cancel(false);
+              }
+            });
+    Deadline deadline =
+        DeadlineScheduler.getInstance()
+            .schedule(
+                () -> {
+                  setErrorClass(metrics, HttpErrorClass.DEADLINE);
+                  log.error("({}) url: {}|deadline {}ms exceeded", operation, url, deadlineMillis);
+                  result.complete(new HttpResult(httpProperties.getDefaultHttpCode()));
+                  return future.cancel(true);
+                },
+                deadlineMillis);
+    result.whenComplete(
+        (response, ex) -> {
+          deadline.close();
+          if (ex != null) {
+            future.cancel(true);
+          }
+          HttpMetricsInstrumentation.endAsync(metricsListeners, metrics);
+        });
+    return result;
+  }
+
+  /** Keeps the first cause, e.g. the deadline rather than the cancellation it triggers. */
+  private void setErrorClass(HttpRequestMetrics metrics, HttpErrorClass errorClass) {
+    if (metrics != null && metrics.getErrorClass() == null) {
+      metrics.setErrorClass(errorClass);
+    }
+  }
+
+  private HttpResult toHttpResult(SimpleHttpResponse response) {
+    HttpResult result = new HttpResult(response.getCode());
+    if (response.getBody() != null) {
+      Header contentEncoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+      if (contentEncoding != null && acceptEncoding != null) {
+        try (InputStream decoded =
+            ContentEncodingUtil.decode(
+                contentEncoding.getValue(), new ByteArrayInputStream(response.getBodyBytes()))) {
+          ContentType contentType =
+              response.getContentType() != null
+                  ? response.getContentType()
+                  : ContentType.DEFAULT_TEXT;
+          result.setBody(
+              new String(
+                  decoded.readAllBytes(), contentType.getCharset(StandardCharsets.US_ASCII)));
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+        response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+        response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+      } else {
+        result.setBody(response.getBodyText());
+      }
+      result.setHeaders(HttpResultResponseHandler.toHeaders(response));
+    } else {
+      result.setBody("");
+    }
+    return result;
+  }
+
+  private SimpleRequestBuilder createRequestBuilder(String method, String url) {
+    SimpleRequestBuilder builder = SimpleRequestBuilder.create(method).setUri(url);
+    if (acceptEncoding != null) {
+      builder.setHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+    }
+    return builder;
+  }
+
+  private void setBody(SimpleRequestBuilder builder, String entity, ContentType contentType) {
+    int threshold = httpProperties.getRequestCompressionThreshold();
+    byte[] content =
+        entity.getBytes(
+            contentType.getCharset() != null
+                ? contentType.getCharset()
+                : StandardCharsets.ISO_8859_1);
+    if (threshold > 0 && content.length >= threshold) {
+      builder.setBody(ContentEncodingUtil.gzip(content), contentType);
+      builder.setHeader(HttpHeaders.CONTENT_ENCODING, ContentEncodingUtil.GZIP);
+    } else {
+      builder.setBody(content, contentType);
+    }
+  }
+
+  private HttpClientContext createContext(boolean allowRedirect, BasicCookieStore cookieStore) {
+    HttpClientContext context = HttpClientContext.create();
+    context.setRequestConfig(allowRedirect ? redirectRequestConfig : noRedirectRequestConfig);
+    context.setCookieStore(cookieStore);
+    return context;
+  }
+
+  private CloseableHttpAsyncClient createHttpClient() {
+    IOReactorConfig ioReactorConfig =
+        IOReactorConfig.custom().setIoThreadCount(httpProperties.getIoThreadCount()).build();
+
+    if (httpProperties.getHttpVersionPolicy() == HttpVersionPolicy.FORCE_HTTP_2) {
+      return HttpAsyncClients.customHttp2()
+          .addExecInterceptorFirst("xstava-metrics", HttpMetricsInstrumentation.ASYNC_HANDLER)
+          .setIOReactorConfig(ioReactorConfig)
+          .setDefaultConnectionConfig(HttpClientConfigs.connectionConfig(httpProperties))
+          .setDefaultRequestConfig(noRedirectRequestConfig)
+          .evictIdleConnections(TimeValue.ofMilliseconds(httpProperties.getEvictIdleTime()))
+          .build();
+    }
+
+    return HttpAsyncClients.custom()
+        .setConnectionManager(
+            PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(httpProperties.getMaxConnTotal())
+                .setMaxConnPerRoute(httpProperties.getMaxConnPerRoute())
+                .setDefaultConnectionConfig(HttpClientConfigs.connectionConfig(httpProperties))
+                .setDefaultTlsConfig(
+                    TlsConfig.custom()
+                        .setVersionPolicy(httpProperties.getHttpVersionPolicy())
+                        .build())
+                .build())
+        .addExecInterceptorFirst("xstava-metrics", HttpMetricsInstrumentation.ASYNC_HANDLER)
+        .setIOReactorConfig(ioReactorConfig)
+        .setDefaultRequestConfig(noRedirectRequestConfig)
+        .evictExpiredConnections()
+        .evictIdleConnections(TimeValue.ofMilliseconds(httpProperties.getEvictIdleTime()))
+        .build();
+  }
+
+  private String toMethodName(HttpMethod method) {
+    switch (method) {
+      case GET:
+      case HEAD:
+      case PUT:
+      case DELETE:
+        return method.name();
+      default:
+        return HttpMethod.POST.name();
+    }
+  }
+
+  private void setBasicAuthenticationHeader(
+      SimpleRequestBuilder builder,
+      boolean isUseBasicAuthentication,
+      String username,
+      String password) {
+    if (isUseBasicAuthentication) {
+      final String auth = username + ":" + password;
+      final byte[] encodedAuth = Base64.encodeBase64(auth.getBytes(StandardCharsets.ISO_8859_1));
+      builder.setHeader(HttpHeaders.AUTHORIZATION, "Basic " + new String(encodedAuth));
+    }
+  }
+
+  private void setHeaders(SimpleRequestBuilder builder, Map<String, String> headers) {
+    if (headers != null) {
+      headers.forEach(builder::setHeader);
+    }
+  }
+}
@@ -16,79 +16,137 @@
 
 package com.github.starvn.xstava.client.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.github.starvn.xstava.client.HttpMethod;
 import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.HttpRequestSpec;
 import com.github.starvn.xstava.client.HttpResult;
-import com.github.starvn.xstava.client.handler.CustomHttpClientResponseHandler;
+import com.github.starvn.xstava.client.TypedHttpResult;
+import com.github.starvn.xstava.client.cache.HttpCacheStats;
+import com.github.starvn.xstava.client.cache.TieredHttpCacheStorage;
+import com.github.starvn.xstava.client.dns.CachingDnsResolver;
+import com.github.starvn.xstava.client.handler.HttpResponseConsumer;
+import com.github.starvn.xstava.client.handler.HttpResultResponseHandler;
+import com.github.starvn.xstava.client.handler.ProgressHttpEntity;
+import com.github.starvn.xstava.client.handler.UploadProgressListener;
+import com.github.starvn.xstava.client.metrics.HttpErrorClass;
+import com.github.starvn.xstava.client.metrics.HttpMetricsListener;
+import com.github.starvn.xstava.client.metrics.HttpRequestMetrics;
+import com.github.starvn.xstava.client.resilience.Bulkhead;
+import com.github.starvn.xstava.client.scheduler.Deadline;
+import com.github.starvn.xstava.client.scheduler.DeadlineScheduler;
+import com.github.starvn.xstava.client.util.CodecUtil;
+import com.github.starvn.xstava.client.util.ContentEncodingUtil;
+import com.github.starvn.xstava.client.util.ExecutorUtil;
+import com.github.starvn.xstava.client.util.MultipartUtil;
+import com.github.starvn.xstava.client.util.RouteUtil;
 import com.github.starvn.xstava.util.ExceptionUtil;
-import com.github.starvn.xstava.util.StringUtil;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.TimeUnit;
-import lombok.AllArgsConstructor;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.SystemDefaultDnsResolver;
+import org.apache.hc.client5.http.cache.HttpCacheContext;
 import org.apache.hc.client5.http.classic.methods.HttpDelete;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpHead;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
 import org.apache.hc.client5.http.classic.methods.HttpPut;
 import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
-import org.apache.hc.client5.http.config.ConnectionConfig;
 import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.cookie.BasicCookieStore;
 import org.apache.hc.client5.http.entity.UrlEncodedFormEntity;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.DefaultSchemePortResolver;
+import org.apache.hc.client5.http.impl.cache.CacheConfig;
+import org.apache.hc.client5.http.impl.cache.CachingHttpClientBuilder;
+import org.apache.hc.client5.http.impl.cache.FileResourceFactory;
+import org.apache.hc.client5.http.impl.cache.ManagedHttpCacheStorage;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.client5.http.impl.io.BasicHttpClientConnectionManager;
-import org.apache.hc.client5.http.io.HttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
 import org.apache.hc.client5.http.protocol.HttpClientContext;
 import org.apache.hc.client5.http.utils.Base64;
-import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.ContentType;
-import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpHost;
 import org.apache.hc.core5.http.NameValuePair;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.message.BasicNameValuePair;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 
 @Slf4j
-@AllArgsConstructor
 public class DefaultHttpClient implements HttpClient {
 
-  private HttpProperties httpProperties;
+  private final HttpProperties httpProperties;
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+  private final RequestConfig redirectRequestConfig;
+  private final RequestConfig noRedirectRequestConfig;
+  private final HttpClientResponseHandler<HttpResult> responseHandler;
+  private final ExecutorService executor;
+  private final ExecutorService downloadExecutor;
+  private final ConcurrentMap<String, Bulkhead> routePermits;
+  private final FileDownloader fileDownloader;
+  private final HttpCacheStats cacheStats;
+  private final TieredHttpCacheStorage cacheStorage;
+  private final List<HttpMetricsListener> metricsListeners;
+
+  public DefaultHttpClient(HttpProperties httpProperties) {
+    this.httpProperties = httpProperties;
+    this.cacheStats = new HttpCacheStats();
+    this.metricsListeners = new CopyOnWriteArrayList<>();
+    this.redirectRequestConfig = HttpClientConfigs.requestConfig(httpProperties, true);
+    this.noRedirectRequestConfig = HttpClientConfigs.requestConfig(httpProperties, false);
+    this.responseHandler = new HttpResultResponseHandler();
+    this.connectionManager = createConnectionManager();
+    this.cacheStorage = createCacheStorage();
+    this.httpClient = createHttpClient();
+    this.executor =
+        ExecutorUtil.newVirtualThreadPerTaskExecutor(
+            "xstava-http", httpProperties.getMaxConnTotal());
+    this.downloadExecutor =
+        ExecutorUtil.newVirtualThreadPerTaskExecutor(
+            "xstava-download", httpProperties.getMaxConnTotal());
+    this.routePermits = new ConcurrentHashMap<>();
+    this.fileDownloader =
+        new FileDownloader(
+            httpClient, httpProperties, redirectRequestConfig, downloadExecutor, metricsListeners);
+  }
 
   @Override
   public HttpResult download(String url, String storageFolder) {
-    HttpResult result = new HttpResult(httpProperties.getDefaultHttpCode());
-    HttpGet getMethod = new HttpGet(url);
-
-    try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-      ClassicHttpResponse response =
-          httpClient.execute(getMethod, new CustomHttpClientResponseHandler());
-      HttpEntity entity = response.getEntity();
-      if (entity != null) {
-        FileOutputStream fos = new FileOutputStream(storageFolder);
-        entity.writeTo(fos);
-        fos.close();
-        result.setStatusCode(response.getCode());
-      }
-    } catch (Exception ex) {
-      log.error("(download) url: " + url + "|" + ExceptionUtil.getFullStackTrace(ex, true));
-    }
-
-    return result;
+    return fileDownloader.download(url, storageFolder);
   }
 
   @Override
@@ -132,6 +190,101 @@ public class DefaultHttpClient implements HttpClient {
     return query(method, url, allowRedirect, headers, null, entity, false, null, null, null);
   }
 
+  @Override
+  public HttpResult execute(HttpRequestSpec spec) {
+    HttpUriRequestBase request = new HttpUriRequestBase(spec.getMethodName(), spec.getUri());
+    request.setConfig(spec.resolveConfig(getRequestConfig(spec.isAllowRedirect())));
+    spec.applyHeaders(request);
+    if (spec.hasBody()) {
+      request.setEntity(
+          ContentEncodingUtil.compress(
+              spec.createEntity(), httpProperties.getRequestCompressionThreshold()));
+    }
+    return execute(
+        "execute",
+        request,
+        HttpClientContext.create(),
+        responseHandler,
+        () -> new HttpResult(httpProperties.getDefaultHttpCode()),
+        spec.getDeadline() >= 0 ? spec.getDeadline() : httpProperties.getRequestDeadline());
+  }
+
+  @Override
+  public HttpResult queryForBytes(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    HttpUriRequestBase request =
+        createRequest(method, url, allowRedirect, headers, null, null, false, null, null);
+    return execute(
+        "queryForBytes",
+        request,
+        HttpClientContext.create(),
+        response -> {
+          HttpResult result = new HttpResult(response.getCode());
+          if (response.getEntity() != null) {
+            result.setContent(EntityUtils.toByteArray(response.getEntity()));
+            result.setHeaders(HttpResultResponseHandler.toHeaders(response));
+          } else {
+            result.setContent(new byte[0]);
+          }
+          return result;
+        });
+  }
+
+  @Override
+  public <T> T stream(
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      String entity,
+      HttpResponseConsumer<T> consumer) {
+    HttpUriRequestBase request =
+        createRequest(method, url, false, headers, null, entity, false, null, null);
+    return execute(
+        "stream",
+        request,
+        HttpClientContext.create(),
+        response -> {
+          HttpEntity responseEntity = response.getEntity();
+          try (InputStream body =
+              responseEntity != null
+                  ? responseEntity.getContent()
+                  : InputStream.nullInputStream()) {
+            return consumer.consume(
+                response.getCode(), HttpResultResponseHandler.toHeaders(response), body);
+          }
+        },
+        () -> null,
+        httpProperties.getRequestDeadline());
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, Class<T> type) {
+    return exchange("query", method, url, headers, null, CodecUtil.constructType(type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, TypeReference<T> type) {
+    return exchange("query", method, url, headers, null, CodecUtil.constructType(type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> exchange(
+      HttpMethod method, String url, Map<String, String> headers, Object body, Class<T> type) {
+    return exchange("exchange", method, url, headers, body, CodecUtil.constructType(type));
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> exchange(
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      Object body,
+      TypeReference<T> type) {
+    return exchange("exchange", method, url, headers, body, CodecUtil.constructType(type));
+  }
+
   @Override
   public HttpResult query(String url, int hardTimeout) {
     return query(url, hardTimeout, false);
@@ -139,57 +292,53 @@ public class DefaultHttpClient implements HttpClient {
 
   @Override
   public HttpResult query(String url, int hardTimeout, boolean isLazy) {
-    HttpResult result = new HttpResult(httpProperties.getDefaultHttpCode());
     HttpGet getMethod = new HttpGet(url);
-    TimerTask task =
-        new TimerTask() {
-          @Override
-          public void run() {
-            getMethod.abort();
-          }
-        };
-    new Timer(true).schedule(task, hardTimeout * 1000L);
-
-    try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-      ClassicHttpResponse response =
-          httpClient.execute(getMethod, classicHttpResponse -> classicHttpResponse);
-      result.setStatusCode(response.getCode());
-      if (isLazy) {
-        result.setBody(EntityUtils.toString(response.getEntity()));
-      } else {
-        result.setBody(response.getEntity().getContent().toString());
-      }
-    } catch (Exception ex) {
-      log.error("(query) ex: {}", ExceptionUtil.getFullStackTrace(ex, true));
-    }
+    getMethod.setConfig(getRequestConfig(true));
 
-    return result;
+    return execute(
+        "query",
+        getMethod,
+        HttpClientContext.create(),
+        response -> {
+          HttpResult result = new HttpResult(response.getCode());
+          if (isLazy) {
+            result.setBody(EntityUtils.toString(response.getEntity()));
+          } else {
+            result.setBody(response.getEntity().getContent().toString());
+          }
+          return result;
+        },
+        () -> new HttpResult(httpProperties.getDefaultHttpCode()),
+        hardTimeout * 1000L);
   }
 
   @Override
   public HttpResult upload(
       String url, Map<String, String> headers, Map<String, String> params, String filepath) {
-    HttpResult result = new HttpResult(httpProperties.getDefaultHttpCode());
-    CloseableHttpResponse response = null;
-    try (CloseableHttpClient httpclient =
-        HttpClients.custom()
-            .setConnectionManager(getConnectionManager())
-            .setDefaultRequestConfig(getRequestConfig(false))
-            .build()) {
-      HttpPost request = new HttpPost(url);
-      setHeaders(request, headers);
-      response =
-          (CloseableHttpResponse)
-              httpclient.execute(request, new CustomHttpClientResponseHandler());
-      result.setStatusCode(response.getCode());
-      result.setBody(StringUtil.toString(response.getEntity().getContent()));
-    } catch (IOException ex) {
-      log.error("(upload) url: " + url + "|" + ExceptionUtil.getFullStackTrace(ex, true));
-    } finally {
-      destroy(response);
-    }
+    return upload(
+        url,
+        headers,
+        params,
+        filepath != null
+            ? Collections.singletonMap(MultipartUtil.DEFAULT_FILE_PART, filepath)
+            : null,
+        null);
+  }
 
-    return result;
+  @Override
+  public HttpResult upload(
+      String url,
+      Map<String, String> headers,
+      Map<String, String> params,
+      Map<String, String> files,
+      UploadProgressListener listener) {
+    HttpPost request = new HttpPost(url);
+    request.setConfig(getRequestConfig(false));
+    setHeaders(request, headers);
+    request.removeHeaders(HttpHeaders.CONTENT_TYPE);
+    HttpEntity entity = MultipartUtil.create(params, files);
+    request.setEntity(listener != null ? new ProgressHttpEntity(entity, listener) : entity);
+    return execute("upload", request, HttpClientContext.create(), responseHandler);
   }
 
   @Override
@@ -204,97 +353,395 @@ public class DefaultHttpClient implements HttpClient {
       String username,
       String password,
       BasicCookieStore cookieStore) {
-    HttpResult result = new HttpResult(httpProperties.getDefaultHttpCode());
     HttpClientContext context = HttpClientContext.create();
     context.setCookieStore(cookieStore);
-    CloseableHttpResponse response = null;
-
-    try (CloseableHttpClient httpclient =
-        HttpClients.custom()
-            .setConnectionManager(getConnectionManager())
-            .setDefaultRequestConfig(getRequestConfig(allowRedirect))
-            .build()) {
-      if (method.equals(HttpMethod.HEAD)) {
-        HttpHead request = new HttpHead(url);
-        setBasicAuthenticationHeader(request, isUseBasicAuthentication, username, password);
-        setHeaders(request, headers);
-        response =
-            (CloseableHttpResponse)
-                httpclient.execute(request, context, new CustomHttpClientResponseHandler());
-      } else if (method.equals(HttpMethod.GET) || method.equals(HttpMethod.DELETE)) {
-        HttpUriRequestBase requestBase;
-        if (method.equals(HttpMethod.GET)) {
-          requestBase = new HttpGet(url);
-        } else {
-          requestBase = new HttpDelete(url);
-        }
-        setBasicAuthenticationHeader(requestBase, isUseBasicAuthentication, username, password);
-        setHeaders(requestBase, headers);
-        response =
-            (CloseableHttpResponse)
-                httpclient.execute(requestBase, context, new CustomHttpClientResponseHandler());
-      } else {
-        HttpUriRequestBase requestBase;
-        if (method.equals(HttpMethod.PUT)) {
-          requestBase = new HttpPut(url);
-        } else {
-          requestBase = new HttpPost(url);
-        }
-        setBasicAuthenticationHeader(requestBase, isUseBasicAuthentication, username, password);
-        setHeaders(requestBase, headers);
-        if (params != null) {
-          List<NameValuePair> parameters = new ArrayList<>();
-          for (Map.Entry<String, String> entry : params.entrySet()) {
-            parameters.add(new BasicNameValuePair(entry.getKey(), entry.getValue()));
+    HttpUriRequestBase request =
+        createRequest(
+            method,
+            url,
+            allowRedirect,
+            headers,
+            params,
+            entity,
+            isUseBasicAuthentication,
+            username,
+            password);
+    return execute("query", request, context, responseHandler);
+  }
+
+  public CompletableFuture<HttpResult> submit(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    HttpUriRequestBase request =
+        createRequest(method, url, allowRedirect, headers, null, null, false, null, null);
+    CompletableFuture<HttpResult> result =
+        submit(url, () -> execute("submit", request, HttpClientContext.create(), responseHandler));
+    result.whenComplete(
+        (response, ex) -> {
+          if (result.isCancelled()) {
+            request.cancel();
           }
-          requestBase.setEntity(new UrlEncodedFormEntity(parameters));
-        }
-        if (entity != null) {
-          requestBase.setEntity(
-              new StringEntity(entity, ContentType.parse(StandardCharsets.UTF_8.name())));
-        }
-        response =
-            (CloseableHttpResponse)
-                httpclient.execute(requestBase, context, new CustomHttpClientResponseHandler());
+        });
+    return result;
+  }
+
+  /**
+   * Runs the call on the executor once a permit of its route is free. Calls wait for a permit
+   * without holding a thread, so saturated routes cannot starve the others, and complete with the
+   * default code when none is free within the connection request timeout.
+   */
+  public CompletableFuture<HttpResult> submit(String url, Supplier<HttpResult> call) {
+    Bulkhead permits =
+        routePermits.computeIfAbsent(
+            RouteUtil.getRoute(url),
+            route ->
+                new Bulkhead(route, httpProperties.getMaxConcurrentPerRoute(), Integer.MAX_VALUE));
+    CompletableFuture<HttpResult> result = new CompletableFuture<>();
+    permits
+        .acquireAsync(httpProperties.getConnectRequestTimeout())
+        .whenComplete(
+            (ignored, ex) -> {
+              if (ex != null) {
+                log.error("(submit) url: {}|no permit for {}", url, permits.getName());
+                result.complete(new HttpResult(httpProperties.getDefaultHttpCode()));
+              } else if (result.isDone()) {
+                // cancelled while waiting
+                permits.release();
+              } else {
+                dispatch(call, permits, result);
+              }
+            });
+    return result;
+  }
+
+  private void dispatch(
+      Supplier<HttpResult> call, Bulkhead permits, CompletableFuture<HttpResult> result) {
+    try {
+      CompletableFuture.supplyAsync(call, executor)
+          .whenComplete(
+              (response, ex) -> {
+                permits.release();
+                if (ex != null) {
+                  result.completeExceptionally(ex);
+                } else {
+                  result.complete(response);
+                }
+              });
+    } catch (RejectedExecutionException ex) {
+      permits.release();
+      result.completeExceptionally(ex);
+    }
+  }
+
+  public List<HttpResult> invokeAll(
+      HttpMethod method, List<String> urls, boolean allowRedirect, Map<String, String> headers) {
+    List<CompletableFuture<HttpResult>> futures =
+        urls.stream()
+            .map(url -> submit(method, url, allowRedirect, headers))
+            .collect(Collectors.toList());
+    return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+  }
+
+  public PoolStats getPoolStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  public PoolStats getPoolStats(String url) {
+    return connectionManager.getStats(toRoute(url));
+  }
+
+  public void setMaxConnectionsPerRoute(String url, int maxConnections) {
+    connectionManager.setMaxPerRoute(toRoute(url), maxConnections);
+  }
+
+  /**
+   * Opens up to {@code connections} connections to the route of {@code url} and returns them to the
+   * pool, so the first requests skip DNS, connect and TLS. Returns how many were opened.
+   */
+  public int prewarm(String url, int connections) {
+    HttpRoute route = toRoute(url);
+    int count = Math.min(connections, connectionManager.getMaxPerRoute(route));
+    Timeout leaseTimeout = Timeout.ofMilliseconds(httpProperties.getConnectRequestTimeout());
+    List<ConnectionEndpoint> endpoints = new ArrayList<>(count);
+    // connects run on their own threads, never behind queued submit() calls
+    ExecutorService connector =
+        ExecutorUtil.newVirtualThreadPerTaskExecutor("xstava-prewarm", Math.max(1, count));
+    int warmed = 0;
+    try {
+      for (int i = 0; i < count; i++) {
+        endpoints.add(
+            connectionManager.lease("prewarm-" + i, route, leaseTimeout, null).get(leaseTimeout));
       }
-      result.setStatusCode(response.getCode());
-      if (response.getEntity() != null) {
-        result.setBody(EntityUtils.toString(response.getEntity()));
-        Multimap<String, String> responseHeaders = ArrayListMultimap.create();
-        for (Header header : response.getHeaders()) {
-          responseHeaders.put(header.getName(), header.getValue());
+      List<CompletableFuture<Boolean>> connects =
+          endpoints.stream()
+              .map(
+                  endpoint ->
+                      CompletableFuture.supplyAsync(() -> connect(url, endpoint), connector))
+              .collect(Collectors.toList());
+      for (CompletableFuture<Boolean> connect : connects) {
+        if (connect.join()) {
+          warmed++;
         }
-        result.setHeaders(responseHeaders);
-      } else {
-        DefaultHttpClient.log.info("(query) response: {}", response);
-        result.setBody("");
       }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      log.error("(prewarm) url: {}|interrupted", url);
+    } catch (ExecutionException | TimeoutException ex) {
+      log.error("(prewarm) url: " + url + "|" + ExceptionUtil.getFullStackTrace(ex, true));
+    } finally {
+      connector.shutdown();
+      TimeValue keepAlive = TimeValue.ofMilliseconds(httpProperties.getEvictIdleTime());
+      endpoints.forEach(endpoint -> connectionManager.release(endpoint, null, keepAlive));
+    }
+    return warmed;
+  }
+
+  public void addMetricsListener(HttpMetricsListener listener) {
+    metricsListeners.add(listener);
+  }
+
+  public void removeMetricsListener(HttpMetricsListener listener) {
+    metricsListeners.remove(listener);
+  }
+
+  public HttpCacheStats getCacheStats() {
+    return cacheStats;
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+    downloadExecutor.shutdown();
+    httpClient.close(CloseMode.GRACEFUL);
+    if (cacheStorage != null) {
+      cacheStorage.shutdown();
+    }
+  }
+
+  private <T> TypedHttpResult<T> exchange(
+      String operation,
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      Object body,
+      JavaType type) {
+    HttpUriRequestBase request =
+        createRequest(method, url, false, headers, null, null, false, null, null);
+    if (!request.containsHeader(HttpHeaders.ACCEPT)) {
+      request.setHeader(HttpHeaders.ACCEPT, CodecUtil.ACCEPT);
+    }
+    if (body != null) {
+      request.setEntity(CodecUtil.toEntity(body));
+    }
+    return execute(
+        operation,
+        request,
+        HttpClientContext.create(),
+        response -> CodecUtil.decode(response, type),
+        () -> new TypedHttpResult<>(httpProperties.getDefaultHttpCode()),
+        httpProperties.getRequestDeadline());
+  }
+
+  private HttpResult execute(
+      String operation,
+      HttpUriRequestBase request,
+      HttpClientContext context,
+      HttpClientResponseHandler<HttpResult> handler) {
+    return execute(
+        operation,
+        request,
+        context,
+        handler,
+        () -> new HttpResult(httpProperties.getDefaultHttpCode()),
+        httpProperties.getRequestDeadline());
+  }
+
+  private <T> T execute(
+      String operation,
+      HttpUriRequestBase request,
+      HttpClientContext context,
+      HttpClientResponseHandler<T> handler,
+      Supplier<T> fallback,
+      long deadlineMillis) {
+    HttpRequestMetrics metrics =
+        HttpMetricsInstrumentation.begin(metricsListeners, operation, request);
+    Deadline deadline = DeadlineScheduler.getInstance().schedule(request, deadlineMillis);
+    try {
+      T result = httpClient.execute(request, context, handler);
+      cacheStats.record(HttpCacheContext.adapt(context).getCacheResponseStatus());
+      if (cacheStorage != null) {
+        cacheStorage.cleanResources();
+      }
+      return result;
     } catch (Exception ex) {
-      log.error("(query) url: " + url + "|" + ExceptionUtil.getFullStackTrace(ex, true));
+      if (deadline.isExpired()) {
+        setErrorClass(metrics, HttpErrorClass.DEADLINE);
+        log.error(
+            "({}) url: {}|deadline {}ms exceeded", operation, getUrl(request), deadlineMillis);
+      } else if (request.isCancelled()) {
+        setErrorClass(metrics, HttpErrorClass.CANCELLED);
+        log.debug("({}) url: {}|cancelled", operation, getUrl(request));
+      } else {
+        setErrorClass(metrics, HttpErrorClass.of(ex));
+        log.error(
+            "("
+                + operation
+                + ") url: "
+                + getUrl(request)
+                + "|"
+                + ExceptionUtil.getFullStackTrace(ex, true));
+      }
+      return fallback.get();
     } finally {
-      destroy(response);
+      deadline.close();
+      HttpMetricsInstrumentation.end(metricsListeners, metrics);
     }
+  }
 
-    return result;
+  private void setErrorClass(HttpRequestMetrics metrics, HttpErrorClass errorClass) {
+    if (metrics != null) {
+      metrics.setErrorClass(errorClass);
+    }
+  }
+
+  private HttpUriRequestBase createRequest(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params,
+      String entity,
+      boolean isUseBasicAuthentication,
+      String username,
+      String password) {
+    HttpUriRequestBase request;
+    if (method.equals(HttpMethod.HEAD)) {
+      request = new HttpHead(url);
+    } else if (method.equals(HttpMethod.GET)) {
+      request = new HttpGet(url);
+    } else if (method.equals(HttpMethod.DELETE)) {
+      request = new HttpDelete(url);
+    } else if (method.equals(HttpMethod.PUT)) {
+      request = new HttpPut(url);
+    } else {
+      request = new HttpPost(url);
+    }
+    request.setConfig(getRequestConfig(allowRedirect));
+    setBasicAuthenticationHeader(request, isUseBasicAuthentication, username, password);
+    setHeaders(request, headers);
+
+    if (request instanceof HttpPut || request instanceof HttpPost) {
+      if (params != null) {
+        List<NameValuePair> parameters = new ArrayList<>();
+        for (Map.Entry<String, String> entry : params.entrySet()) {
+          parameters.add(new BasicNameValuePair(entry.getKey(), entry.getValue()));
+        }
+        request.setEntity(new UrlEncodedFormEntity(parameters));
+      }
+      if (entity != null) {
+        request.setEntity(
+            ContentEncodingUtil.compress(
+                new StringEntity(entity, ContentType.parse(StandardCharsets.UTF_8.name())),
+                httpProperties.getRequestCompressionThreshold()));
+      }
+    }
+    return request;
   }
 
   private RequestConfig getRequestConfig(boolean allowRedirect) {
-    return RequestConfig.custom()
-        .setConnectionRequestTimeout(
-            httpProperties.getConnectRequestTimeout(), TimeUnit.MILLISECONDS)
-        .setRedirectsEnabled(allowRedirect)
+    return allowRedirect ? redirectRequestConfig : noRedirectRequestConfig;
+  }
+
+  private PoolingHttpClientConnectionManager createConnectionManager() {
+    int maxConnPerRoute =
+        Math.max(httpProperties.getMaxConnPerRoute(), httpProperties.getMaxConcurrentPerRoute());
+    return PoolingHttpClientConnectionManagerBuilder.create()
+        .setMaxConnTotal(Math.max(httpProperties.getMaxConnTotal(), maxConnPerRoute))
+        .setMaxConnPerRoute(maxConnPerRoute)
+        .setDefaultConnectionConfig(HttpClientConfigs.connectionConfig(httpProperties))
+        .setDnsResolver(new HttpMetricsInstrumentation.TimedDnsResolver(createDnsResolver()))
+        .setSSLSocketFactory(new HttpMetricsInstrumentation.TimedSSLSocketFactory())
         .build();
   }
 
-  private HttpClientConnectionManager getConnectionManager() {
-    ConnectionConfig connConfig =
-        ConnectionConfig.custom()
-            .setConnectTimeout(httpProperties.getConnectTimeout(), TimeUnit.MILLISECONDS)
-            .setSocketTimeout(httpProperties.getSocketTimeout(), TimeUnit.MILLISECONDS)
-            .build();
-    BasicHttpClientConnectionManager cm = new BasicHttpClientConnectionManager();
-    cm.setConnectionConfig(connConfig);
-    return cm;
+  private DnsResolver createDnsResolver() {
+    if (httpProperties.getDnsCacheTtl() > 0) {
+      return new CachingDnsResolver(
+          httpProperties.getDnsCacheTtl(), httpProperties.getDnsNegativeCacheTtl());
+    }
+    return SystemDefaultDnsResolver.INSTANCE;
+  }
+
+  private CloseableHttpClient createHttpClient() {
+    HttpClientBuilder builder =
+        Boolean.TRUE.equals(httpProperties.getCacheEnabled())
+            ? createCachingHttpClientBuilder()
+            : HttpClients.custom();
+    builder
+        .setConnectionManager(
+            new HttpMetricsInstrumentation.InstrumentedConnectionManager(connectionManager))
+        .addExecInterceptorFirst("xstava-metrics-status", HttpMetricsInstrumentation.STATUS_HANDLER)
+        .addExecInterceptorBefore(
+            ChainElement.MAIN_TRANSPORT.name(),
+            "xstava-metrics-transport",
+            HttpMetricsInstrumentation.TRANSPORT_HANDLER)
+        .setDefaultRequestConfig(noRedirectRequestConfig)
+        .evictExpiredConnections()
+        .evictIdleConnections(TimeValue.ofMilliseconds(httpProperties.getEvictIdleTime()));
+    if (!Boolean.TRUE.equals(httpProperties.getAutomaticRetries())) {
+      builder.disableAutomaticRetries();
+    }
+    if (Boolean.TRUE.equals(httpProperties.getContentCompression())) {
+      builder.setContentDecoderRegistry(
+          ContentEncodingUtil.getDecoders(httpProperties.getAcceptEncodings()));
+    } else {
+      builder.disableContentCompression();
+    }
+    return builder.build();
+  }
+
+  private HttpClientBuilder createCachingHttpClientBuilder() {
+    CachingHttpClientBuilder builder =
+        CachingHttpClientBuilder.create().setCacheConfig(createCacheConfig());
+    if (cacheStorage != null) {
+      builder
+          .setResourceFactory(new FileResourceFactory(new File(httpProperties.getCacheDirectory())))
+          .setHttpCacheStorage(cacheStorage);
+    }
+    return builder;
+  }
+
+  private CacheConfig createCacheConfig() {
+    return createCacheConfig(httpProperties.getCacheMaxEntries());
+  }
+
+  private CacheConfig createCacheConfig(int maxCacheEntries) {
+    return CacheConfig.custom()
+        .setMaxCacheEntries(maxCacheEntries)
+        .setMaxObjectSize(httpProperties.getCacheMaxObjectSize())
+        .build();
+  }
+
+  /**
+   * Storage of the memory and file-backed cache tiers, or null without a cache directory, in which
+   * case the cache is held in memory only. The files of entries evicted from the disk index are
+   * deleted by {@link TieredHttpCacheStorage#cleanResources()} after every request and all of them
+   * on {@link #close()}, since the index does not outlive the client.
+   */
+  private TieredHttpCacheStorage createCacheStorage() {
+    if (!Boolean.TRUE.equals(httpProperties.getCacheEnabled())
+        || httpProperties.getCacheDirectory() == null) {
+      return null;
+    }
+
+    File cacheDir = new File(httpProperties.getCacheDirectory());
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      log.error("(createCacheStorage) cannot create cache directory: {}", cacheDir);
+      return null;
+    }
+    return new TieredHttpCacheStorage(
+        httpProperties.getCacheMaxEntries(),
+        new ManagedHttpCacheStorage(createCacheConfig(httpProperties.getCacheDiskMaxEntries())),
+        cacheStats);
   }
 
   @SneakyThrows
@@ -311,6 +758,35 @@ public class DefaultHttpClient implements HttpClient {
     }
   }
 
+  private boolean connect(String url, ConnectionEndpoint endpoint) {
+    if (endpoint.isConnected()) {
+      return false;
+    }
+
+    try {
+      connectionManager.connect(endpoint, null, HttpClientContext.create());
+      return true;
+    } catch (IOException ex) {
+      log.error("(connect) url: " + url + "|" + ExceptionUtil.getFullStackTrace(ex, true));
+      return false;
+    }
+  }
+
+  @SneakyThrows
+  private HttpRoute toRoute(String url) {
+    HttpHost host = HttpHost.create(URI.create(url));
+    HttpHost target =
+        new HttpHost(
+            host.getSchemeName(),
+            host.getHostName(),
+            DefaultSchemePortResolver.INSTANCE.resolve(host));
+    return new HttpRoute(target, null, URIScheme.HTTPS.same(host.getSchemeName()));
+  }
+
+  private String getUrl(HttpUriRequestBase request) {
+    return request.getScheme() + "://" + request.getAuthority() + request.getRequestUri();
+  }
+
   private void setHeaders(HttpUriRequestBase request, Map<String, String> headers) {
     if (headers != null) {
       for (Map.Entry<String, String> entry : headers.entrySet()) {
@@ -318,14 +794,4 @@ public class DefaultHttpClient implements HttpClient {
       }
     }
   }
-
-  private void destroy(CloseableHttpResponse response) {
-    try {
-      if (response != null) {
-        response.close();
-      }
-    } catch (Exception ex) {
-      log.error("(destroy) ex: {}", ExceptionUtil.getFullStackTrace(ex, true));
-    }
-  }
 }
@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.starvn.xstava.client.service;
+
+import com.github.starvn.xstava.client.HttpProperties;
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.handler.HttpResultResponseHandler;
+import com.github.starvn.xstava.client.metrics.HttpErrorClass;
+import com.github.starvn.xstava.client.metrics.HttpMetricsListener;
+import com.github.starvn.xstava.client.metrics.HttpRequestMetrics;
+import com.github.starvn.xstava.client.util.ContentEncodingUtil;
+import com.github.starvn.xstava.util.ExceptionUtil;
+import com.google.common.collect.Multimap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpHead;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+
+/**
+ * Downloads into a file through a {@link FileChannel}, resuming a partially written file with HTTP
+ * range requests and splitting large files into concurrent ranges written in place. The validator
+ * of the response that wrote a partial file is kept next to it in a {@code .part} file and sent as
+ * {@code If-Range}, so a partial file left by another version of the resource is never extended;
+ * without a stored validator the download starts over.
+ */
+@Slf4j
+@AllArgsConstructor
+class FileDownloader {
+
+  private final CloseableHttpClient httpClient;
+  private final HttpProperties httpProperties;
+  private final RequestConfig requestConfig;
+  private final ExecutorService executor;
+  private final List<HttpMetricsListener> metricsListeners;
+  // direct buffers are costly to allocate, so each worker borrows one and hands it back
+  private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+  private static final String PART_SUFFIX = ".part";
+
+  HttpResult download(String url, String filepath) {
+    try {
+      Path path = Paths.get(filepath);
+      RemoteFile remote = probe(url);
+      if (remote.statusCode >= HttpStatus.SC_REDIRECTION && !remote.isHeadUnsupported()) {
+        log.info("(download) url: {}, statusCode: {}", url, remote.statusCode);
+        return new HttpResult(remote.statusCode);
+      }
+
+      int statusCode;
+      if (remote.acceptRanges
+          && remote.length >= httpProperties.getDownloadParallelThreshold()
+          && httpProperties.getDownloadParallelism() > 1) {
+        statusCode = downloadInParallel(url, path, remote);
+      } else {
+        statusCode = downloadSequentially(url, path, remote);
+      }
+
+      HttpResult result = new HttpResult(statusCode);
+      result.setHeaders(remote.headers);
+      return result;
+    } catch (Exception ex) {
+      log.error("(download) url: " + url + "|" + ExceptionUtil.getFullStackTrace(ex, true));
+      return new HttpResult(httpProperties.getDefaultHttpCode());
+    }
+  }
+
+  private int downloadSequentially(String url, Path path, RemoteFile remote) throws IOException {
+    long existing = Files.exists(path) ? Files.size(path) : 0;
+    String stored = readValidator(path);
+    boolean resume =
+        remote.acceptRanges && stored != null && existing > 0 && existing < remote.length;
+    Segment segment = new Segment(resume ? existing : 0, -1, resume ? stored : null);
+    log.info("(downloadSequentially) url: {}, position: {}", url, segment.position);
+
+    try (Target target = new Target(path)) {
+      int statusCode = fetch(url, target, segment, remote, true);
+      if (isSuccess(statusCode) && remote.length >= 0 && segment.position != remote.length) {
+        throw new IOException("incomplete download: " + segment.position + "/" + remote.length);
+      }
+      if (isSuccess(statusCode)) {
+        Files.deleteIfExists(partPath(path));
+      }
+      return statusCode;
+    }
+  }
+
+  private int downloadInParallel(String url, Path path, RemoteFile remote) throws IOException {
+    int parallelism = httpProperties.getDownloadParallelism();
+    long segmentSize = (remote.length + parallelism - 1) / parallelism;
+    log.info(
+        "(downloadInParallel) url: {}, length: {}, parallelism: {}",
+        url,
+        remote.length,
+        parallelism);
+
+    // ranges are written out of order, so a partial file left by this path cannot be resumed
+    Files.deleteIfExists(partPath(path));
+    try (Target target =
+        new Target(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      target.open();
+      List<CompletableFuture<Integer>> futures = new ArrayList<>();
+      for (long start = 0; start < remote.length; start += segmentSize) {
+        Segment segment =
+            new Segment(start, Math.min(start + segmentSize, remote.length) - 1, remote.validator);
+        futures.add(
+            CompletableFuture.supplyAsync(
+                () -> {
+                  try {
+                    return fetch(url, target, segment, remote, false);
+                  } catch (IOException ex) {
+                    log.error(
+                        "(downloadInParallel) url: "
+                            + url
+                            + "|"
+                            + ExceptionUtil.getFullStackTrace(ex, true));
+                    return httpProperties.getDefaultHttpCode();
+                  }
+                },
+                executor));
+      }
+
+      int statusCode = HttpStatus.SC_OK;
+      for (CompletableFuture<Integer> future : futures) {
+        int segmentStatusCode = future.join();
+        if (!isSuccess(segmentStatusCode)) {
+          statusCode = segmentStatusCode;
+        }
+      }
+      return statusCode;
+    }
+  }
+
+  private int fetch(
+      String url, Target target, Segment segment, RemoteFile remote, boolean allowRestart)
+      throws IOException {
+    ByteBuffer buffer = borrowBuffer();
+    try {
+      return fetch(url, target, segment, remote, allowRestart, buffer);
+    } finally {
+      buffer.clear();
+      buffers.offer(buffer);
+    }
+  }
+
+  private int fetch(
+      String url,
+      Target target,
+      Segment segment,
+      RemoteFile remote,
+      boolean allowRestart,
+      ByteBuffer buffer)
+      throws IOException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        int statusCode = fetchOnce(url, target, segment, allowRestart, buffer);
+        if (isSuccess(statusCode) && segment.end >= 0 && segment.position != segment.end + 1) {
+          throw new IOException("truncated range: " + segment.position + "/" + segment.end);
+        }
+        return isSuccess(statusCode) ? HttpStatus.SC_OK : statusCode;
+      } catch (IOException ex) {
+        if (attempt >= httpProperties.getDownloadMaxAttempts()
+            || (!remote.acceptRanges && !allowRestart)) {
+          throw ex;
+        }
+        log.info(
+            "(fetch) url: {}, attempt: {}, position: {}, ex: {}",
+            url,
+            attempt,
+            segment.position,
+            ex.toString());
+        buffer.clear();
+      }
+    }
+  }
+
+  private int fetchOnce(
+      String url, Target target, Segment segment, boolean allowRestart, ByteBuffer buffer)
+      throws IOException {
+    HttpGet request = new HttpGet(url);
+    request.setConfig(requestConfig);
+    request.setHeader(HttpHeaders.ACCEPT_ENCODING, ContentEncodingUtil.IDENTITY);
+    if (segment.position > 0 || segment.end >= 0) {
+      request.setHeader(
+          HttpHeaders.RANGE,
+          "bytes=" + segment.position + "-" + (segment.end >= 0 ? segment.end : ""));
+      if (segment.validator != null) {
+        request.setHeader(HttpHeaders.IF_RANGE, segment.validator);
+      }
+    }
+
+    return execute(
+        request,
+        response -> {
+          int statusCode = response.getCode();
+          if (statusCode != HttpStatus.SC_OK && statusCode != HttpStatus.SC_PARTIAL_CONTENT) {
+            return statusCode;
+          }
+
+          FileChannel channel = target.open();
+          if (statusCode == HttpStatus.SC_OK && allowRestart) {
+            channel.truncate(0);
+            segment.position = 0;
+            segment.validator = getValidator(response);
+            writeValidator(target.path, segment.validator);
+          } else if (statusCode == HttpStatus.SC_OK) {
+            // a full body, e.g. of a changed version, must not be written over other ranges
+            throw new IOException("range not honoured by " + url);
+          }
+
+          HttpEntity entity = response.getEntity();
+          if (entity != null) {
+            try (InputStream content = entity.getContent()) {
+              transfer(Channels.newChannel(content), channel, segment, buffer);
+            }
+          }
+          return statusCode;
+        });
+  }
+
+  private void transfer(
+      ReadableByteChannel source, FileChannel target, Segment segment, ByteBuffer buffer)
+      throws IOException {
+    boolean endOfStream = false;
+    while (!endOfStream) {
+      endOfStream = source.read(buffer) == -1;
+      if (endOfStream || !buffer.hasRemaining()) {
+        buffer.flip();
+        if (segment.end >= 0 && segment.position + buffer.remaining() > segment.end + 1) {
+          throw new IOException("range overrun: " + segment.position + "/" + segment.end);
+        }
+        while (buffer.hasRemaining()) {
+          segment.position += target.write(buffer, segment.position);
+        }
+        buffer.clear();
+      }
+    }
+  }
+
+  private RemoteFile probe(String url) throws IOException {
+    HttpHead request = new HttpHead(url);
+    request.setConfig(requestConfig);
+    request.setHeader(HttpHeaders.ACCEPT_ENCODING, ContentEncodingUtil.IDENTITY);
+    return execute(
+        request,
+        response -> {
+          RemoteFile remote =
+              new RemoteFile(
+                  response.getCode(),
+                  -1,
+                  false,
+                  null,
+                  HttpResultResponseHandler.toHeaders(response));
+          if (remote.isHeadUnsupported()) {
+            // the headers describe the error, not the file; the GET finds out the rest
+            return remote;
+          }
+
+          Header contentLength = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+          Header acceptRanges = response.getFirstHeader(HttpHeaders.ACCEPT_RANGES);
+          return new RemoteFile(
+              remote.statusCode,
+              contentLength != null ? Long.parseLong(contentLength.getValue()) : -1,
+              acceptRanges != null && "bytes".equalsIgnoreCase(acceptRanges.getValue()),
+              getValidator(response),
+              remote.headers);
+        });
+  }
+
+  /** Every probe and range request is published to the metrics listeners of the client. */
+  private <T> T execute(HttpUriRequestBase request, HttpClientResponseHandler<T> handler)
+      throws IOException {
+    HttpRequestMetrics metrics =
+        HttpMetricsInstrumentation.begin(metricsListeners, "download", request);
+    try {
+      return httpClient.execute(request, handler);
+    } catch (IOException | RuntimeException ex) {
+      if (metrics != null) {
+        metrics.setErrorClass(HttpErrorClass.of(ex));
+      }
+      throw ex;
+    } finally {
+      HttpMetricsInstrumentation.end(metricsListeners, metrics);
+    }
+  }
+
+  private String getValidator(ClassicHttpResponse response) {
+    Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+    if (etag != null && !etag.getValue().startsWith("W/")) {
+      return etag.getValue();
+    }
+    Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+    return lastModified != null ? lastModified.getValue() : null;
+  }
+
+  private ByteBuffer borrowBuffer() {
+    ByteBuffer buffer = buffers.poll();
+    return buffer != null
+        ? buffer
+        : ByteBuffer.allocateDirect(httpProperties.getDownloadBufferSize());
+  }
+
+  private static Path partPath(Path path) {
+    return path.resolveSibling(path.getFileName() + PART_SUFFIX);
+  }
+
+  private static String readValidator(Path path) throws IOException {
+    Path part = partPath(path);
+    if (!Files.exists(part)) {
+      return null;
+    }
+    String validator = Files.readString(part, StandardCharsets.UTF_8).trim();
+    return validator.isEmpty() ? null : validator;
+  }
+
+  private static void writeValidator(Path path, String validator) throws IOException {
+    if (validator == null) {
+      Files.deleteIfExists(partPath(path));
+    } else {
+      Files.writeString(partPath(path), validator, StandardCharsets.UTF_8);
+    }
+  }
+
+  private boolean isSuccess(int statusCode) {
+    return statusCode >= HttpStatus.SC_SUCCESS && statusCode < HttpStatus.SC_REDIRECTION;
+  }
+
+  @AllArgsConstructor
+  private static class RemoteFile {
+
+    private final int statusCode;
+    private final long length;
+    private final boolean acceptRanges;
+    private final String validator;
+    private final Multimap<String, String> headers;
+
+    private boolean isHeadUnsupported() {
+      return statusCode == HttpStatus.SC_METHOD_NOT_ALLOWED
+          || statusCode == HttpStatus.SC_NOT_IMPLEMENTED;
+    }
+  }
+
+  @AllArgsConstructor
+  private static class Segment {
+
+    private long position;
+    private final long end;
+    private String validator;
+  }
+
+  /** Target file, opened on the first successful response so errors leave it untouched. */
+  private static class Target implements Closeable {
+
+    private final Path path;
+    private final OpenOption[] options;
+    private FileChannel channel;
+
+    private Target(Path path, OpenOption... options) {
+      this.path = path;
+      this.options =
+          options.length > 0
+              ? options
+              : new OpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.WRITE};
+    }
+
+    private synchronized FileChannel open() throws IOException {
+      if (channel == null) {
+        channel = FileChannel.open(path, options);
+      }
+      return channel;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      if (channel != null) {
+        channel.close();
+      }
+    }
+  }
+}
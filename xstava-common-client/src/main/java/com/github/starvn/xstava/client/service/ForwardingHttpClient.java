@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpRequestSpec;
+import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.TypedHttpResult;
+import com.github.starvn.xstava.client.handler.HttpResponseConsumer;
+import com.github.starvn.xstava.client.handler.UploadProgressListener;
+import java.io.IOException;
+import java.util.Map;
+import org.apache.hc.client5.http.cookie.BasicCookieStore;
+
+/** Base for decorators: forwards every call to the wrapped client unless overridden. */
+public abstract class ForwardingHttpClient implements HttpClient {
+
+  protected final HttpClient delegate;
+
+  protected ForwardingHttpClient(HttpClient delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public HttpResult download(String url, String storageFolder) {
+    return delegate.download(url, storageFolder);
+  }
+
+  @Override
+  public HttpResult post(String url, Map<String, String> headers, String entity) {
+    return delegate.post(url, headers, entity);
+  }
+
+  @Override
+  public HttpResult post(String url, Map<String, String> headers, Map<String, String> params) {
+    return delegate.post(url, headers, params);
+  }
+
+  @Override
+  public HttpResult query(HttpMethod method, String url, boolean allowRedirect) {
+    return delegate.query(method, url, allowRedirect);
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    return delegate.query(method, url, allowRedirect, headers);
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params) {
+    return delegate.query(method, url, allowRedirect, headers, params);
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      String entity) {
+    return delegate.query(method, url, allowRedirect, headers, entity);
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method,
+      String url,
+      boolean allowRedirect,
+      Map<String, String> headers,
+      Map<String, String> params,
+      String entity,
+      boolean isUseBasicAuthentication,
+      String username,
+      String password,
+      BasicCookieStore cookieStore) {
+    return delegate.query(
+        method,
+        url,
+        allowRedirect,
+        headers,
+        params,
+        entity,
+        isUseBasicAuthentication,
+        username,
+        password,
+        cookieStore);
+  }
+
+  @Override
+  public HttpResult execute(HttpRequestSpec spec) {
+    return delegate.execute(spec);
+  }
+
+  @Override
+  public HttpResult queryForBytes(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    return delegate.queryForBytes(method, url, allowRedirect, headers);
+  }
+
+  @Override
+  public <T> T stream(
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      String entity,
+      HttpResponseConsumer<T> consumer) {
+    return delegate.stream(method, url, headers, entity, consumer);
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, Class<T> type) {
+    return delegate.query(method, url, headers, type);
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, TypeReference<T> type) {
+    return delegate.query(method, url, headers, type);
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> exchange(
+      HttpMethod method, String url, Map<String, String> headers, Object body, Class<T> type) {
+    return delegate.exchange(method, url, headers, body, type);
+  }
+
+  @Override
+  public <T> TypedHttpResult<T> exchange(
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      Object body,
+      TypeReference<T> type) {
+    return delegate.exchange(method, url, headers, body, type);
+  }
+
+  @Override
+  public HttpResult query(String url, int hardTimeout) {
+    return delegate.query(url, hardTimeout);
+  }
+
+  @Override
+  public HttpResult query(String url, int hardTimeout, boolean isLazy) {
+    return delegate.query(url, hardTimeout, isLazy);
+  }
+
+  @Override
+  public HttpResult upload(
+      String url, Map<String, String> headers, Map<String, String> params, String filepath) {
+    return delegate.upload(url, headers, params, filepath);
+  }
+
+  @Override
+  public HttpResult upload(
+      String url,
+      Map<String, String> headers,
+      Map<String, String> params,
+      Map<String, String> files,
+      UploadProgressListener listener) {
+    return delegate.upload(url, headers, params, files, listener);
+  }
+
+  @Override
+  public void close() throws IOException {
+    delegate.close();
+  }
+}
@@ -16,12 +16,18 @@
 
 package com.github.starvn.xstava.client.service;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpRequestSpec;
 import com.github.starvn.xstava.client.HttpResult;
+import com.github.starvn.xstava.client.TypedHttpResult;
+import com.github.starvn.xstava.client.handler.HttpResponseConsumer;
+import com.github.starvn.xstava.client.handler.UploadProgressListener;
+import java.io.Closeable;
 import java.util.Map;
 import org.apache.hc.client5.http.cookie.BasicCookieStore;
 
-public interface HttpClient {
+public interface HttpClient extends Closeable {
 
   HttpResult download(String url, String storageFolder);
 
@@ -60,10 +66,45 @@ public interface HttpClient {
       String password,
       BasicCookieStore cookieStore);
 
+  HttpResult execute(HttpRequestSpec spec);
+
+  HttpResult queryForBytes(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers);
+
+  <T> T stream(
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      String entity,
+      HttpResponseConsumer<T> consumer);
+
+  <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, Class<T> type);
+
+  <T> TypedHttpResult<T> query(
+      HttpMethod method, String url, Map<String, String> headers, TypeReference<T> type);
+
+  <T> TypedHttpResult<T> exchange(
+      HttpMethod method, String url, Map<String, String> headers, Object body, Class<T> type);
+
+  <T> TypedHttpResult<T> exchange(
+      HttpMethod method,
+      String url,
+      Map<String, String> headers,
+      Object body,
+      TypeReference<T> type);
+
   HttpResult query(String url, int hardTimeout);
 
   HttpResult query(String url, int hardTimeout, boolean isLazy);
 
   HttpResult upload(
       String url, Map<String, String> headers, Map<String, String> params, String filepath);
+
+  HttpResult upload(
+      String url,
+      Map<String, String> headers,
+      Map<String, String> params,
+      Map<String, String> files,
+      UploadProgressListener listener);
 }
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.starvn.xstava.client.service;
+
+import com.github.starvn.xstava.client.HttpProperties;
+import java.util.concurrent.TimeUnit;
+import lombok.experimental.UtilityClass;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.util.TimeValue;
+
+@UtilityClass
+class HttpClientConfigs {
+
+  static RequestConfig requestConfig(HttpProperties httpProperties, boolean allowRedirect) {
+    return RequestConfig.custom()
+        .setConnectionRequestTimeout(
+            httpProperties.getConnectRequestTimeout(), TimeUnit.MILLISECONDS)
+        // pooled connections fall back to their bind-time timeout when reused, so the response
+        // timeout is set per request as well
+        .setResponseTimeout(httpProperties.getSocketTimeout(), TimeUnit.MILLISECONDS)
+        .setRedirectsEnabled(allowRedirect)
+        .build();
+  }
+
+  static ConnectionConfig connectionConfig(HttpProperties httpProperties) {
+    return ConnectionConfig.custom()
+        .setConnectTimeout(httpProperties.getConnectTimeout(), TimeUnit.MILLISECONDS)
+        .setSocketTimeout(httpProperties.getSocketTimeout(), TimeUnit.MILLISECONDS)
+        .setTimeToLive(
+            httpProperties.getConnectionTimeToLive() > 0
+                ? TimeValue.ofMilliseconds(httpProperties.getConnectionTimeToLive())
+                : null)
+        .setValidateAfterInactivity(
+            httpProperties.getValidateAfterInactivity(), TimeUnit.MILLISECONDS)
+        .build();
+  }
+}
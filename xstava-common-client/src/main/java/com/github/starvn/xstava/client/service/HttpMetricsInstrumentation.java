@@ -0,0 +1,539 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.service;
+
+import com.github.starvn.xstava.client.metrics.HttpMetricsListener;
+import com.github.starvn.xstava.client.metrics.HttpRequestMetrics;
+import com.github.starvn.xstava.util.ExceptionUtil;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.AsyncExecCallback;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.HttpClientConnectionManager;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.ssl.HttpsSupport;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.apache.hc.core5.http.nio.AsyncDataConsumer;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducerWrapper;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * Hooks that fill the {@link HttpRequestMetrics} of the request running on the current thread. The
+ * classic client leases, connects and exchanges on the calling thread, so a thread local is enough
+ * to attribute every phase to its request. The async client runs on its I/O reactor instead, so its
+ * metrics travel in the request context and only cover the exchange itself: status, time to first
+ * byte and bytes, but no lease or connection phases.
+ */
+@Slf4j
+final class HttpMetricsInstrumentation {
+
+  private static final ThreadLocal<HttpRequestMetrics> CURRENT = new ThreadLocal<>();
+  private static final String METRICS_ATTRIBUTE = "xstava.metrics";
+
+  static final ExecChainHandler STATUS_HANDLER =
+      (request, scope, chain) -> {
+        ClassicHttpResponse response = chain.proceed(request, scope);
+        HttpRequestMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+          metrics.setStatusCode(response.getCode());
+        }
+        return response;
+      };
+
+  static final ExecChainHandler TRANSPORT_HANDLER =
+      (request, scope, chain) -> {
+        HttpRequestMetrics metrics = CURRENT.get();
+        if (metrics == null) {
+          return chain.proceed(request, scope);
+        }
+
+        HttpEntity entity = request.getEntity();
+        if (entity != null && !(entity instanceof CountingEntity)) {
+          request.setEntity(new CountingEntity(entity, metrics, false));
+        }
+        ClassicHttpResponse response = chain.proceed(request, scope);
+        metrics.setTimeToFirstByteNanos(System.nanoTime() - metrics.getStartNanos());
+        if (response.getEntity() != null) {
+          response.setEntity(new CountingEntity(response.getEntity(), metrics, true));
+        }
+        return response;
+      };
+
+  static final AsyncExecChainHandler ASYNC_HANDLER =
+      (request, entityProducer, scope, chain, callback) -> {
+        HttpRequestMetrics metrics =
+            scope.clientContext.getAttribute(METRICS_ATTRIBUTE, HttpRequestMetrics.class);
+        if (metrics == null) {
+          chain.proceed(request, entityProducer, scope, callback);
+          return;
+        }
+
+        chain.proceed(
+            request,
+            entityProducer != null ? new CountingEntityProducer(entityProducer, metrics) : null,
+            scope,
+            new AsyncExecCallback() {
+              @Override
+              public AsyncDataConsumer handleResponse(
+                  HttpResponse response, EntityDetails entityDetails)
+                  throws HttpException, IOException {
+                metrics.setStatusCode(response.getCode());
+                metrics.setTimeToFirstByteNanos(System.nanoTime() - metrics.getStartNanos());
+                AsyncDataConsumer consumer = callback.handleResponse(response, entityDetails);
+                return consumer != null ? new CountingDataConsumer(consumer, metrics) : null;
+              }
+
+              @Override
+              public void handleInformationResponse(HttpResponse response)
+                  throws HttpException, IOException {
+                callback.handleInformationResponse(response);
+              }
+
+              @Override
+              public void completed() {
+                callback.completed();
+              }
+
+              @Override
+              public void failed(Exception cause) {
+                callback.failed(cause);
+              }
+            });
+      };
+
+  private HttpMetricsInstrumentation() {}
+
+  /** Starts measuring a request on the current thread, or returns null without listeners. */
+  static HttpRequestMetrics begin(
+      List<HttpMetricsListener> listeners, String operation, HttpUriRequestBase request) {
+    if (listeners.isEmpty()) {
+      return null;
+    }
+
+    HttpRequestMetrics metrics =
+        create(
+            operation, request.getMethod(), request.getScheme() + "://" + request.getAuthority());
+    CURRENT.set(metrics);
+    return metrics;
+  }
+
+  static void end(List<HttpMetricsListener> listeners, HttpRequestMetrics metrics) {
+    if (metrics != null) {
+      CURRENT.remove();
+      publish(listeners, metrics);
+    }
+  }
+
+  /**
+   * Starts measuring an async request carried by {@code context}, or returns null without
+   * listeners.
+   */
+  static HttpRequestMetrics beginAsync(
+      List<HttpMetricsListener> listeners,
+      String operation,
+      String method,
+      String url,
+      HttpClientContext context) {
+    if (listeners.isEmpty()) {
+      return null;
+    }
+
+    String route;
+    try {
+      URI uri = URI.create(url);
+      route = uri.getScheme() + "://" + uri.getRawAuthority();
+    } catch (IllegalArgumentException ex) {
+      route = url;
+    }
+    HttpRequestMetrics metrics = create(operation, method, route);
+    context.setAttribute(METRICS_ATTRIBUTE, metrics);
+    return metrics;
+  }
+
+  static void endAsync(List<HttpMetricsListener> listeners, HttpRequestMetrics metrics) {
+    if (metrics != null) {
+      publish(listeners, metrics);
+    }
+  }
+
+  private static HttpRequestMetrics create(String operation, String method, String route) {
+    HttpRequestMetrics metrics = new HttpRequestMetrics();
+    metrics.setOperation(operation);
+    metrics.setMethod(method);
+    metrics.setRoute(route);
+    metrics.setStartNanos(System.nanoTime());
+    return metrics;
+  }
+
+  private static void publish(List<HttpMetricsListener> listeners, HttpRequestMetrics metrics) {
+    metrics.setTotalNanos(System.nanoTime() - metrics.getStartNanos());
+    for (HttpMetricsListener listener : listeners) {
+      try {
+        listener.onRequest(metrics);
+      } catch (Exception ex) {
+        log.error("(publish) ex: {}", ExceptionUtil.getFullStackTrace(ex, true));
+      }
+    }
+  }
+
+  static class TimedDnsResolver implements DnsResolver {
+
+    private final DnsResolver delegate;
+
+    TimedDnsResolver(DnsResolver delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+      long start = System.nanoTime();
+      try {
+        return delegate.resolve(host);
+      } finally {
+        HttpRequestMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+          metrics.setDnsNanos(metrics.getDnsNanos() + System.nanoTime() - start);
+        }
+      }
+    }
+
+    @Override
+    public String resolveCanonicalHostname(String host) throws UnknownHostException {
+      return delegate.resolveCanonicalHostname(host);
+    }
+  }
+
+  static class TimedSSLSocketFactory extends SSLConnectionSocketFactory {
+
+    TimedSSLSocketFactory() {
+      super(SSLContexts.createDefault(), HttpsSupport.getDefaultHostnameVerifier());
+    }
+
+    @Override
+    public Socket createLayeredSocket(
+        Socket socket, String target, int port, Object attachment, HttpContext context)
+        throws IOException {
+      long start = System.nanoTime();
+      try {
+        return super.createLayeredSocket(socket, target, port, attachment, context);
+      } finally {
+        HttpRequestMetrics metrics = CURRENT.get();
+        if (metrics != null) {
+          metrics.setTlsNanos(metrics.getTlsNanos() + System.nanoTime() - start);
+        }
+      }
+    }
+  }
+
+  /** Times leases and connects; pool control is forwarded so idle eviction keeps working. */
+  static class InstrumentedConnectionManager
+      implements HttpClientConnectionManager, ConnPoolControl<HttpRoute> {
+
+    private final PoolingHttpClientConnectionManager delegate;
+
+    InstrumentedConnectionManager(PoolingHttpClientConnectionManager delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public LeaseRequest lease(String id, HttpRoute route, Timeout requestTimeout, Object state) {
+      LeaseRequest leaseRequest = delegate.lease(id, route, requestTimeout, state);
+      return new LeaseRequest() {
+        @Override
+        public ConnectionEndpoint get(Timeout timeout)
+            throws InterruptedException, ExecutionException, TimeoutException {
+          long start = System.nanoTime();
+          try {
+            return leaseRequest.get(timeout);
+          } finally {
+            HttpRequestMetrics metrics = CURRENT.get();
+            if (metrics != null) {
+              metrics.setLeaseNanos(metrics.getLeaseNanos() + System.nanoTime() - start);
+            }
+          }
+        }
+
+        @Override
+        public boolean cancel() {
+          return leaseRequest.cancel();
+        }
+      };
+    }
+
+    @Override
+    public void release(ConnectionEndpoint endpoint, Object newState, TimeValue validDuration) {
+      delegate.release(endpoint, newState, validDuration);
+    }
+
+    @Override
+    public void connect(ConnectionEndpoint endpoint, TimeValue connectTimeout, HttpContext context)
+        throws IOException {
+      HttpRequestMetrics metrics = CURRENT.get();
+      if (metrics == null) {
+        delegate.connect(endpoint, connectTimeout, context);
+        return;
+      }
+
+      long start = System.nanoTime();
+      long nested = metrics.getDnsNanos() + metrics.getTlsNanos();
+      try {
+        delegate.connect(endpoint, connectTimeout, context);
+      } finally {
+        nested = metrics.getDnsNanos() + metrics.getTlsNanos() - nested;
+        metrics.setConnectionReused(false);
+        metrics.setConnectNanos(metrics.getConnectNanos() + System.nanoTime() - start - nested);
+      }
+    }
+
+    @Override
+    public void upgrade(ConnectionEndpoint endpoint, HttpContext context) throws IOException {
+      delegate.upgrade(endpoint, context);
+    }
+
+    @Override
+    public void close(CloseMode closeMode) {
+      delegate.close(closeMode);
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+
+    @Override
+    public void setMaxTotal(int max) {
+      delegate.setMaxTotal(max);
+    }
+
+    @Override
+    public int getMaxTotal() {
+      return delegate.getMaxTotal();
+    }
+
+    @Override
+    public void setDefaultMaxPerRoute(int max) {
+      delegate.setDefaultMaxPerRoute(max);
+    }
+
+    @Override
+    public int getDefaultMaxPerRoute() {
+      return delegate.getDefaultMaxPerRoute();
+    }
+
+    @Override
+    public void setMaxPerRoute(HttpRoute route, int max) {
+      delegate.setMaxPerRoute(route, max);
+    }
+
+    @Override
+    public int getMaxPerRoute(HttpRoute route) {
+      return delegate.getMaxPerRoute(route);
+    }
+
+    @Override
+    public void closeIdle(TimeValue idleTime) {
+      delegate.closeIdle(idleTime);
+    }
+
+    @Override
+    public void closeExpired() {
+      delegate.closeExpired();
+    }
+
+    @Override
+    public Set<HttpRoute> getRoutes() {
+      return delegate.getRoutes();
+    }
+
+    @Override
+    public PoolStats getTotalStats() {
+      return delegate.getTotalStats();
+    }
+
+    @Override
+    public PoolStats getStats(HttpRoute route) {
+      return delegate.getStats(route);
+    }
+  }
+
+  private static class CountingEntity extends HttpEntityWrapper {
+
+    private final HttpRequestMetrics metrics;
+    private final boolean received;
+
+    CountingEntity(HttpEntity entity, HttpRequestMetrics metrics, boolean received) {
+      super(entity);
+      this.metrics = metrics;
+      this.received = received;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      return new FilterInputStream(super.getContent()) {
+        @Override
+        public int read() throws IOException {
+          int b = super.read();
+          if (b >= 0) {
+            count(1);
+          }
+          return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          int n = super.read(b, off, len);
+          if (n > 0) {
+            count(n);
+          }
+          return n;
+        }
+      };
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+      super.writeTo(
+          new FilterOutputStream(outStream) {
+            @Override
+            public void write(int b) throws IOException {
+              out.write(b);
+              count(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+              out.write(b, off, len);
+              count(len);
+            }
+          });
+    }
+
+    private void count(long bytes) {
+      if (received) {
+        metrics.setBytesReceived(metrics.getBytesReceived() + bytes);
+      } else {
+        metrics.setBytesSent(metrics.getBytesSent() + bytes);
+      }
+    }
+  }
+
+  private static class CountingEntityProducer extends AsyncEntityProducerWrapper {
+
+    private final HttpRequestMetrics metrics;
+
+    CountingEntityProducer(AsyncEntityProducer producer, HttpRequestMetrics metrics) {
+      super(producer);
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void produce(DataStreamChannel channel) throws IOException {
+      super.produce(
+          new DataStreamChannel() {
+            @Override
+            public void requestOutput() {
+              channel.requestOutput();
+            }
+
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+              int n = channel.write(src);
+              metrics.setBytesSent(metrics.getBytesSent() + n);
+              return n;
+            }
+
+            @Override
+            public void endStream() throws IOException {
+              channel.endStream();
+            }
+
+            @Override
+            public void endStream(List<? extends Header> trailers) throws IOException {
+              channel.endStream(trailers);
+            }
+          });
+    }
+  }
+
+  private static class CountingDataConsumer implements AsyncDataConsumer {
+
+    private final AsyncDataConsumer delegate;
+    private final HttpRequestMetrics metrics;
+
+    CountingDataConsumer(AsyncDataConsumer delegate, HttpRequestMetrics metrics) {
+      this.delegate = delegate;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+      delegate.updateCapacity(capacityChannel);
+    }
+
+    @Override
+    public void consume(ByteBuffer src) throws IOException {
+      metrics.setBytesReceived(metrics.getBytesReceived() + src.remaining());
+      delegate.consume(src);
+    }
+
+    @Override
+    public void streamEnd(List<? extends Header> trailers) throws HttpException, IOException {
+      delegate.streamEnd(trailers);
+    }
+
+    @Override
+    public void releaseResources() {
+      delegate.releaseResources();
+    }
+  }
+}
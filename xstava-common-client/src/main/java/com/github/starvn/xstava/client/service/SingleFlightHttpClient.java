@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.service;
+
+import com.github.starvn.xstava.client.HttpMethod;
+import com.github.starvn.xstava.client.HttpRequestSpec;
+import com.github.starvn.xstava.client.HttpResult;
+import com.google.common.collect.ArrayListMultimap;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import lombok.Value;
+import org.apache.hc.core5.http.Header;
+
+/**
+ * Coalesces identical concurrent GET/HEAD queries into a single upstream call. Requests are
+ * identical when method, url, redirect flag and the key headers match; when no key headers are
+ * given every request header is part of the key. Credential headers are always part of the key, so
+ * requests of different principals are never merged. Each waiter receives its own copy of the
+ * result.
+ */
+public class SingleFlightHttpClient extends ForwardingHttpClient {
+
+  private static final Set<String> CREDENTIAL_HEADERS =
+      Set.of("authorization", "proxy-authorization", "cookie");
+
+  private final Set<String> keyHeaders;
+  private final ConcurrentMap<Key, CompletableFuture<HttpResult>> inFlight;
+  private final LongAdder coalesced;
+
+  public SingleFlightHttpClient(HttpClient delegate) {
+    this(delegate, null);
+  }
+
+  public SingleFlightHttpClient(HttpClient delegate, Collection<String> keyHeaders) {
+    super(delegate);
+    this.keyHeaders =
+        keyHeaders != null
+            ? keyHeaders.stream()
+                .map(name -> name.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet())
+            : null;
+    this.inFlight = new ConcurrentHashMap<>();
+    this.coalesced = new LongAdder();
+  }
+
+  @Override
+  public HttpResult query(HttpMethod method, String url, boolean allowRedirect) {
+    return query(method, url, allowRedirect, null);
+  }
+
+  @Override
+  public HttpResult query(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    if (!isIdempotent(method)) {
+      return delegate.query(method, url, allowRedirect, headers);
+    }
+    return coalesce(
+        new Key(method, url, allowRedirect, false, toKeyHeaders(headers)),
+        () -> delegate.query(method, url, allowRedirect, headers));
+  }
+
+  @Override
+  public HttpResult queryForBytes(
+      HttpMethod method, String url, boolean allowRedirect, Map<String, String> headers) {
+    if (!isIdempotent(method)) {
+      return delegate.queryForBytes(method, url, allowRedirect, headers);
+    }
+    return coalesce(
+        new Key(method, url, allowRedirect, true, toKeyHeaders(headers)),
+        () -> delegate.queryForBytes(method, url, allowRedirect, headers));
+  }
+
+  @Override
+  public HttpResult execute(HttpRequestSpec spec) {
+    if (!isIdempotent(spec.getMethod()) || spec.hasBody()) {
+      return delegate.execute(spec);
+    }
+
+    Map<String, String> headers = new HashMap<>();
+    for (Header header : spec.getHeaders()) {
+      headers.put(header.getName(), header.getValue());
+    }
+    return coalesce(
+        new Key(
+            spec.getMethod(), spec.getUrl(), spec.isAllowRedirect(), false, toKeyHeaders(headers)),
+        () -> delegate.execute(spec));
+  }
+
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  public int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  private HttpResult coalesce(Key key, Supplier<HttpResult> call) {
+    CompletableFuture<HttpResult> flight = new CompletableFuture<>();
+    CompletableFuture<HttpResult> leader = inFlight.putIfAbsent(key, flight);
+    if (leader != null) {
+      coalesced.increment();
+      try {
+        return copy(leader.join());
+      } catch (CompletionException ex) {
+        if (ex.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) ex.getCause();
+        }
+        throw ex;
+      }
+    }
+
+    try {
+      HttpResult result = call.get();
+      flight.complete(result);
+      return result;
+    } catch (RuntimeException | Error ex) {
+      flight.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      inFlight.remove(key, flight);
+    }
+  }
+
+  private Map<String, String> toKeyHeaders(Map<String, String> headers) {
+    Map<String, String> result = new TreeMap<>();
+    if (headers != null) {
+      headers.forEach(
+          (name, value) -> {
+            String lowerName = name.toLowerCase(Locale.ROOT);
+            if (keyHeaders == null
+                || keyHeaders.contains(lowerName)
+                || CREDENTIAL_HEADERS.contains(lowerName)) {
+              result.put(lowerName, value);
+            }
+          });
+    }
+    return result;
+  }
+
+  private static boolean isIdempotent(HttpMethod method) {
+    return method == HttpMethod.GET || method == HttpMethod.HEAD;
+  }
+
+  /**
+   * {@link HttpResult} is mutable, so waiters get their own copy rather than the leader's instance;
+   * the body string is shared, the byte content and the headers are copied.
+   */
+  private static HttpResult copy(HttpResult source) {
+    if (source == null) {
+      return null;
+    }
+
+    HttpResult result = new HttpResult(source.getStatusCode());
+    result.setBody(source.getBody());
+    result.setContent(source.getContent() != null ? source.getContent().clone() : null);
+    result.setHeaders(
+        source.getHeaders() != null ? ArrayListMultimap.create(source.getHeaders()) : null);
+    return result;
+  }
+
+  @Value
+  private static class Key {
+    HttpMethod method;
+    String url;
+    boolean allowRedirect;
+    boolean bytes;
+    Map<String, String> headers;
+  }
+}
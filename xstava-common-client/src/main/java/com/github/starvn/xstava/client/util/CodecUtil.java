@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.starvn.xstava.client.TypedHttpResult;
+import com.github.starvn.xstava.client.handler.HttpResultResponseHandler;
+import com.github.starvn.xstava.util.MapperType;
+import com.github.starvn.xstava.util.MapperUtil;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.HttpEntities;
+
+/**
+ * Decodes response bodies and encodes request bodies with shared Jackson mappers, reading from and
+ * writing to the connection streams without an intermediate String.
+ */
+@Slf4j
+@UtilityClass
+public class CodecUtil {
+
+  public static final String ACCEPT = "application/json, application/xml;q=0.9, */*;q=0.8";
+  public static final ContentType APPLICATION_SMILE =
+      ContentType.create("application/x-jackson-smile");
+  public static final ContentType APPLICATION_CBOR = ContentType.create("application/cbor");
+
+  public static JavaType constructType(Class<?> type) {
+    return MapperUtil.constructType(type);
+  }
+
+  public static JavaType constructType(TypeReference<?> type) {
+    return MapperUtil.constructType(type);
+  }
+
+  public static HttpEntity toEntity(Object body) {
+    if (body instanceof HttpEntity) {
+      return (HttpEntity) body;
+    }
+    return HttpEntities.create(
+        outputStream ->
+            MapperUtil.getWriter(MapperType.LENIENT_JSON).writeValue(outputStream, body),
+        ContentType.APPLICATION_JSON);
+  }
+
+  public static <T> TypedHttpResult<T> decode(ClassicHttpResponse response, JavaType type)
+      throws IOException, ParseException {
+    TypedHttpResult<T> result = new TypedHttpResult<>(response.getCode());
+    result.setHeaders(HttpResultResponseHandler.toHeaders(response));
+    HttpEntity entity = response.getEntity();
+    if (entity == null) {
+      return result;
+    }
+
+    if (response.getCode() >= 200 && response.getCode() < 300) {
+      try (InputStream body = entity.getContent()) {
+        result.setValue(read(body, entity.getContentType(), type));
+      } catch (JsonProcessingException ex) {
+        // the upstream answered; only its body is unreadable, so keep its status
+        log.warn("(decode) status: {}|{}", response.getCode(), ex.getOriginalMessage());
+        result.setDecodeError(ex.getOriginalMessage());
+      }
+    } else {
+      result.setBody(EntityUtils.toString(entity));
+    }
+    return result;
+  }
+
+  /** Encodes the body with the mapper of the given type, labelled with its content type. */
+  public static HttpEntity toEntity(Object body, MapperType mapperType) {
+    return HttpEntities.create(
+        outputStream -> MapperUtil.getWriter(mapperType).writeValue(outputStream, body),
+        toContentType(mapperType));
+  }
+
+  public static <T> T read(InputStream body, String contentType, JavaType type) throws IOException {
+    ObjectReader reader = MapperUtil.getReader(toMapperType(contentType), type);
+    try (JsonParser parser = reader.createParser(body)) {
+      if (parser.nextToken() == null) {
+        return null;
+      }
+      return reader.readValue(parser);
+    }
+  }
+
+  public static MapperType toMapperType(String contentType) {
+    String value = contentType == null ? "" : contentType.toLowerCase(Locale.ROOT);
+    if (value.contains("xml")) {
+      return MapperType.XML;
+    }
+    if (value.contains("smile")) {
+      return MapperType.SMILE;
+    }
+    if (value.contains("cbor")) {
+      return MapperType.CBOR;
+    }
+    return MapperType.LENIENT_JSON;
+  }
+
+  public static ContentType toContentType(MapperType mapperType) {
+    switch (mapperType) {
+      case XML:
+        return ContentType.APPLICATION_XML;
+      case SMILE:
+        return APPLICATION_SMILE;
+      case CBOR:
+        return APPLICATION_CBOR;
+      default:
+        return ContentType.APPLICATION_JSON;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.starvn.xstava.client.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.entity.BrotliDecompressingEntity;
+import org.apache.hc.client5.http.entity.BrotliInputStreamFactory;
+import org.apache.hc.client5.http.entity.DeflateInputStreamFactory;
+import org.apache.hc.client5.http.entity.GZIPInputStreamFactory;
+import org.apache.hc.client5.http.entity.GzipCompressingEntity;
+import org.apache.hc.client5.http.entity.InputStreamFactory;
+import org.apache.hc.core5.http.HttpEntity;
+
+@Slf4j
+@UtilityClass
+public class ContentEncodingUtil {
+
+  public static final String GZIP = "gzip";
+  public static final String X_GZIP = "x-gzip";
+  public static final String DEFLATE = "deflate";
+  public static final String BROTLI = "br";
+  public static final String IDENTITY = "identity";
+
+  public static LinkedHashMap<String, InputStreamFactory> getDecoders(List<String> encodings) {
+    LinkedHashMap<String, InputStreamFactory> decoders = new LinkedHashMap<>();
+    for (String encoding : encodings) {
+      String name = encoding.trim().toLowerCase(Locale.ROOT);
+      InputStreamFactory decoder = getDecoder(name);
+      if (decoder != null) {
+        decoders.put(name, decoder);
+      } else {
+        log.info("(getDecoders) unsupported encoding: {}", encoding);
+      }
+    }
+    return decoders;
+  }
+
+  public static InputStream decode(String contentEncoding, InputStream inputStream)
+      throws IOException {
+    if (contentEncoding == null) {
+      return inputStream;
+    }
+    InputStreamFactory decoder = getDecoder(contentEncoding.trim().toLowerCase(Locale.ROOT));
+    return decoder != null ? decoder.create(inputStream) : inputStream;
+  }
+
+  public static HttpEntity compress(HttpEntity entity, int threshold) {
+    if (threshold > 0 && entity.getContentLength() >= threshold) {
+      return new GzipCompressingEntity(entity);
+    }
+    return entity;
+  }
+
+  public static byte[] gzip(byte[] content) {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.length / 4 + 64);
+    try (GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream)) {
+      gzipStream.write(content);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return outputStream.toByteArray();
+  }
+
+  private static InputStreamFactory getDecoder(String encoding) {
+    switch (encoding) {
+      case GZIP:
+      case X_GZIP:
+        return GZIPInputStreamFactory.getInstance();
+      case DEFLATE:
+        return DeflateInputStreamFactory.getInstance();
+      case BROTLI:
+        return BrotliDecompressingEntity.isAvailable()
+            ? BrotliInputStreamFactory.getInstance()
+            : null;
+      default:
+        return null;
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.starvn.xstava.client.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@UtilityClass
+public class ExecutorUtil {
+
+  private static final long IDLE_TIMEOUT_SECONDS = 60L;
+
+  /**
+   * Uses a virtual thread per task when the runtime supports it (Java 21+). Otherwise tasks run on
+   * at most {@code maxThreads} daemon platform threads, which time out when idle; further tasks
+   * wait in the queue, so a burst of blocking calls cannot create a thread each. Tasks must not
+   * wait for permits or other tasks of the same executor, or they can fill every thread.
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor(
+      String threadNamePrefix, int maxThreads) {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException ex) {
+      log.info(
+          "(newVirtualThreadPerTaskExecutor) virtual threads unavailable, use {} platform threads",
+          maxThreads);
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              maxThreads,
+              maxThreads,
+              IDLE_TIMEOUT_SECONDS,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(),
+              new ThreadFactoryBuilder()
+                  .setNameFormat(threadNamePrefix + "-%d")
+                  .setDaemon(true)
+                  .build());
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+    }
+  }
+}
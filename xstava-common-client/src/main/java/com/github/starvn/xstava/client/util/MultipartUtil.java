@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.client.util;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import lombok.experimental.UtilityClass;
+import org.apache.hc.client5.http.entity.mime.HttpMultipartMode;
+import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+
+/** Builds the multipart/form-data upload body shared by the blocking and the async client. */
+@UtilityClass
+public class MultipartUtil {
+
+  public static final String DEFAULT_FILE_PART = "file";
+
+  /** Text parts for {@code params} followed by one file part per entry of {@code files}. */
+  public static HttpEntity create(Map<String, String> params, Map<String, String> files) {
+    MultipartEntityBuilder builder =
+        MultipartEntityBuilder.create()
+            .setMode(HttpMultipartMode.EXTENDED)
+            .setCharset(StandardCharsets.UTF_8);
+    if (params != null) {
+      ContentType textType = ContentType.TEXT_PLAIN.withCharset(StandardCharsets.UTF_8);
+      params.forEach((name, value) -> builder.addTextBody(name, value, textType));
+    }
+    if (files != null) {
+      files.forEach(
+          (name, filepath) -> {
+            File file = new File(filepath);
+            builder.addBinaryBody(name, file, ContentType.DEFAULT_BINARY, file.getName());
+          });
+    }
+    return builder.build();
+  }
+}
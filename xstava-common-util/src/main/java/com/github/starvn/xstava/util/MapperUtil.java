@@ -16,42 +16,116 @@
 
 package com.github.starvn.xstava.util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.github.starvn.xstava.util.mapping.BeanMapping;
+import com.github.starvn.xstava.util.mapping.BeanMappings;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.modelmapper.convention.MatchingStrategies;
 
+/**
+ * Object mapping and JSON, XML, Smile and CBOR conversion. One mapper per {@link MapperType} is
+ * built up front and shared, together with the {@link ObjectReader}s and {@link ObjectWriter}s
+ * created for each type, so serializer and deserializer lookups are paid once per type rather than
+ * once per call.
+ */
 @Slf4j
 public final class MapperUtil {
 
   private static final MapperUtil ourInstance = new MapperUtil();
+  private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
   private final ModelMapper modelMapper;
+  private final BeanMappings beanMappings;
+  private final Map<MapperType, ObjectMapper> mappers;
+  private final Map<MapperType, ConcurrentMap<JavaType, ObjectReader>> readers;
+  private final Map<MapperType, ConcurrentMap<JavaType, ObjectWriter>> writers;
+  private final Map<MapperType, ObjectWriter> defaultWriters;
 
   private MapperUtil() {
     modelMapper = new ModelMapper();
     modelMapper.getConfiguration().setMatchingStrategy(MatchingStrategies.STRICT);
+    beanMappings = new BeanMappings();
+    mappers = new EnumMap<>(MapperType.class);
+    readers = new EnumMap<>(MapperType.class);
+    writers = new EnumMap<>(MapperType.class);
+    defaultWriters = new EnumMap<>(MapperType.class);
+    for (MapperType type : MapperType.values()) {
+      ObjectMapper mapper = createMapper(type);
+      mappers.put(type, mapper);
+      readers.put(type, new ConcurrentHashMap<>());
+      writers.put(type, new ConcurrentHashMap<>());
+      defaultWriters.put(type, mapper.writer());
+    }
   }
 
   private static MapperUtil getInstance() {
     return ourInstance;
   }
 
+  private static ObjectMapper createMapper(MapperType type) {
+    switch (type) {
+      case XML:
+        return new XmlMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+      case LENIENT_JSON:
+        return lenient(new ObjectMapper());
+      case SMILE:
+        return lenient(new SmileMapper());
+      case CBOR:
+        return lenient(new CBORMapper());
+      default:
+        return new ObjectMapper().disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+    }
+  }
+
+  private static ObjectMapper lenient(ObjectMapper mapper) {
+    return mapper
+        .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+  }
+
   public static Map<String, Object> toMap(Object object) {
     return toMap(toJson(object));
   }
 
   public static Map<String, Object> toMap(String json) {
-    ObjectMapper mapper = new ObjectMapper();
-
     try {
-      return mapper.readValue(json, new TypeReference<Map<String, Object>>() {});
+      return getReader(MapperType.JSON, MAP_TYPE).readValue(json);
     } catch (IOException ex) {
       log.error("(toMap) ex: {}", ExceptionUtil.getFullStackTrace(ex));
       return Collections.emptyMap();
@@ -63,28 +137,462 @@ public final class MapperUtil {
       return null;
     }
 
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
-
     try {
-      return mapper.writeValueAsString(object);
+      return getWriter(MapperType.JSON).writeValueAsString(object);
     } catch (IOException ex) {
       log.error("(toJson) ex: {}", ExceptionUtil.getFullStackTrace(ex));
       return object.toString();
     }
   }
 
+  public static <T> T fromJson(String json, Class<T> type) {
+    return fromJson(json, getReader(MapperType.LENIENT_JSON, type));
+  }
+
+  public static <T> T fromJson(String json, TypeReference<T> type) {
+    return fromJson(json, getReader(MapperType.LENIENT_JSON, type));
+  }
+
+  private static <T> T fromJson(String json, ObjectReader reader) {
+    if (json == null) {
+      return null;
+    }
+
+    try {
+      return reader.readValue(json);
+    } catch (IOException ex) {
+      log.error("(fromJson) ex: {}", ExceptionUtil.getFullStackTrace(ex));
+      return null;
+    }
+  }
+
+  /**
+   * Returns the value at the given JSON Pointer (RFC 6901), e.g. {@code /a/b/0/c}, or null when it
+   * is missing. Siblings of the path are skipped token by token without being bound, and parsing
+   * stops at the value, so only the value itself is materialized.
+   */
+  public static Object extract(String json, String pointer) {
+    return extract(json, pointer, Object.class);
+  }
+
+  public static <T> T extract(String json, String pointer, Class<T> type) {
+    if (json == null) {
+      return null;
+    }
+
+    JsonPointer path = compilePointer(pointer);
+    if (path == null) {
+      return null;
+    }
+
+    try (JsonParser parser = mapper(MapperType.LENIENT_JSON).createParser(json)) {
+      parser.nextToken();
+      return seek(parser, path) ? getReader(MapperType.LENIENT_JSON, type).readValue(parser) : null;
+    } catch (IOException ex) {
+      log.error("(extract) pointer: {}|ex: {}", pointer, ExceptionUtil.getFullStackTrace(ex));
+      return null;
+    }
+  }
+
+  /**
+   * Extracts several pointers in one pass, see {@link #extract(String, String)}. The result maps
+   * each pointer that is present to its value and is in the order of {@code pointers}; parsing
+   * stops once all of them are found. Invalid pointers are logged and left out.
+   */
+  public static Map<String, Object> extractAll(String json, String... pointers) {
+    Map<String, Object> values = new LinkedHashMap<>();
+    if (json == null || pointers.length == 0) {
+      return values;
+    }
+
+    JsonPointer[] paths = new JsonPointer[pointers.length];
+    int remaining = 0;
+    for (int i = 0; i < pointers.length; i++) {
+      paths[i] = compilePointer(pointers[i]);
+      remaining += paths[i] != null ? 1 : 0;
+    }
+    if (remaining == 0) {
+      return values;
+    }
+
+    Object[] found = new Object[pointers.length];
+    boolean[] present = new boolean[pointers.length];
+    try (JsonParser parser = mapper(MapperType.LENIENT_JSON).createParser(json)) {
+      parser.nextToken();
+      collect(parser, paths, found, present, new int[] {remaining});
+    } catch (IOException ex) {
+      log.error(
+          "(extractAll) pointers: {}|ex: {}",
+          Arrays.toString(pointers),
+          ExceptionUtil.getFullStackTrace(ex));
+    }
+    for (int i = 0; i < pointers.length; i++) {
+      if (present[i]) {
+        values.put(pointers[i], found[i]);
+      }
+    }
+    return values;
+  }
+
+  private static JsonPointer compilePointer(String pointer) {
+    try {
+      return JsonPointer.compile(pointer);
+    } catch (IllegalArgumentException ex) {
+      log.error("(compilePointer) pointer: {}|ex: {}", pointer, ex.getMessage());
+      return null;
+    }
+  }
+
+  /** Advances the parser to the value at {@code path}, relative to the current token. */
+  private static boolean seek(JsonParser parser, JsonPointer path) throws IOException {
+    while (!path.matches()) {
+      JsonToken token = parser.currentToken();
+      if (token == JsonToken.START_OBJECT) {
+        String property = path.getMatchingProperty();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          boolean matched = property.equals(parser.currentName());
+          parser.nextToken();
+          if (matched) {
+            break;
+          }
+          parser.skipChildren();
+        }
+        if (parser.currentToken() == JsonToken.END_OBJECT) {
+          return false;
+        }
+      } else if (token == JsonToken.START_ARRAY && path.getMatchingIndex() >= 0) {
+        int index = path.getMatchingIndex();
+        for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY && i < index; i++) {
+          parser.skipChildren();
+        }
+        if (parser.currentToken() == JsonToken.END_ARRAY) {
+          return false;
+        }
+      } else {
+        return false;
+      }
+      path = path.tail();
+    }
+    return true;
+  }
+
+  /**
+   * Walks the current value for the pointers still pending in {@code paths} (null when done or not
+   * under this value), descending only into children some pointer goes through.
+   */
+  private static void collect(
+      JsonParser parser, JsonPointer[] paths, Object[] found, boolean[] present, int[] remaining)
+      throws IOException {
+    boolean nested = false;
+    for (int i = 0; i < paths.length; i++) {
+      if (paths[i] != null && !present[i] && paths[i].matches()) {
+        nested = true;
+        break;
+      }
+    }
+    if (nested) {
+      JsonNode node = getReader(MapperType.LENIENT_JSON, JsonNode.class).readValue(parser);
+      for (int i = 0; i < paths.length; i++) {
+        JsonNode value = paths[i] == null || present[i] ? null : node.at(paths[i]);
+        if (value != null && !value.isMissingNode()) {
+          found[i] = mapper(MapperType.LENIENT_JSON).treeToValue(value, Object.class);
+          present[i] = true;
+          remaining[0]--;
+        }
+      }
+      return;
+    }
+
+    JsonToken token = parser.currentToken();
+    if (token != JsonToken.START_OBJECT && token != JsonToken.START_ARRAY) {
+      return;
+    }
+    boolean isObject = token == JsonToken.START_OBJECT;
+    JsonPointer[] children = new JsonPointer[paths.length];
+    for (int index = 0; remaining[0] > 0; index++) {
+      JsonToken next = parser.nextToken();
+      if (next == JsonToken.END_OBJECT || next == JsonToken.END_ARRAY) {
+        return;
+      }
+      String name = isObject ? parser.currentName() : null;
+      if (isObject) {
+        parser.nextToken();
+      }
+
+      boolean descend = false;
+      for (int i = 0; i < paths.length; i++) {
+        JsonPointer path = paths[i];
+        boolean matched =
+            path != null
+                && !present[i]
+                && (isObject
+                    ? path.getMatchingProperty().equals(name)
+                    : path.getMatchingIndex() == index);
+        children[i] = matched ? path.tail() : null;
+        descend |= matched;
+      }
+      if (descend) {
+        collect(parser, children, found, present, remaining);
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  /**
+   * Serializes with the mapper of the given type, typically {@link MapperType#SMILE} or {@link
+   * MapperType#CBOR} for internal payloads and cache values.
+   */
+  public static byte[] toBytes(Object object, MapperType mapperType) {
+    if (object == null) {
+      return null;
+    }
+
+    try {
+      return getWriter(mapperType).writeValueAsBytes(object);
+    } catch (IOException ex) {
+      log.error("(toBytes) type: {}|ex: {}", mapperType, ExceptionUtil.getFullStackTrace(ex));
+      return null;
+    }
+  }
+
+  public static <T> T fromBytes(byte[] bytes, Class<T> type, MapperType mapperType) {
+    return fromBytes(bytes, getReader(mapperType, type), mapperType);
+  }
+
+  public static <T> T fromBytes(byte[] bytes, TypeReference<T> type, MapperType mapperType) {
+    return fromBytes(bytes, getReader(mapperType, type), mapperType);
+  }
+
+  private static <T> T fromBytes(byte[] bytes, ObjectReader reader, MapperType mapperType) {
+    if (bytes == null) {
+      return null;
+    }
+
+    try {
+      return reader.readValue(bytes);
+    } catch (IOException ex) {
+      log.error("(fromBytes) type: {}|ex: {}", mapperType, ExceptionUtil.getFullStackTrace(ex));
+      return null;
+    }
+  }
+
+  /**
+   * Reads the elements of a JSON array, or the values of newline-delimited JSON, one at a time.
+   * Only the current element is held in memory. Closing the iterator closes {@code in}.
+   */
+  public static <T> MappingIterator<T> readValues(InputStream in, Class<T> type)
+      throws IOException {
+    return getReader(MapperType.LENIENT_JSON, type).readValues(in);
+  }
+
+  public static <T> MappingIterator<T> readValues(InputStream in, TypeReference<T> type)
+      throws IOException {
+    return getReader(MapperType.LENIENT_JSON, type).readValues(in);
+  }
+
+  /**
+   * Same as {@link #readValues(InputStream, Class)} as a sequential {@link Stream}, which must be
+   * closed, e.g. with try-with-resources. Read errors surface as {@link UncheckedIOException} or
+   * Jackson's {@code RuntimeJsonMappingException}.
+   */
+  public static <T> Stream<T> streamValues(InputStream in, Class<T> type) throws IOException {
+    return toStream(readValues(in, type));
+  }
+
+  public static <T> Stream<T> streamValues(InputStream in, TypeReference<T> type)
+      throws IOException {
+    return toStream(readValues(in, type));
+  }
+
+  public static <T> Stream<T> streamValues(Path path, Class<T> type) throws IOException {
+    InputStream in = Files.newInputStream(path);
+    try {
+      return streamValues(in, type);
+    } catch (IOException | RuntimeException ex) {
+      in.close();
+      throw ex;
+    }
+  }
+
+  private static <T> Stream<T> toStream(MappingIterator<T> iterator) {
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(
+                iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(
+            () -> {
+              try {
+                iterator.close();
+              } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+              }
+            });
+  }
+
+  /**
+   * Opens a writer that serializes values to {@code out} as they are written. Closing the writer
+   * finishes the sequence but leaves {@code out} open.
+   */
+  public static SequenceWriter openWriter(OutputStream out, SequenceFormat format)
+      throws IOException {
+    ObjectWriter writer =
+        getWriter(MapperType.JSON).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    return format == SequenceFormat.NDJSON
+        ? writer.withRootValueSeparator("\n").writeValues(out)
+        : writer.writeValuesAsArray(out);
+  }
+
+  /** Writes every value to {@code out} and returns how many were written. */
+  public static long writeValues(OutputStream out, Iterator<?> values, SequenceFormat format)
+      throws IOException {
+    long count = 0;
+    try (SequenceWriter writer = openWriter(out, format)) {
+      while (values.hasNext()) {
+        writer.write(values.next());
+        count++;
+      }
+    }
+    return count;
+  }
+
+  public static long writeValues(OutputStream out, Stream<?> values, SequenceFormat format)
+      throws IOException {
+    return writeValues(out, values.iterator(), format);
+  }
+
   public static ModelMapper getModelMapper() {
     return getInstance().modelMapper;
   }
 
+  /**
+   * Compiled mapping from {@code sourceType} to {@code destinationType}, matching properties by
+   * exact name like {@link #getModelMapper()}. It is built on first use and cached; hold on to it
+   * in hot loops to skip the lookup.
+   */
+  public static <S, D> BeanMapping<S, D> getMapping(Class<S> sourceType, Class<D> destinationType) {
+    return getInstance().beanMappings.get(sourceType, destinationType);
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <D> D map(Object source, Class<D> destinationType) {
+    if (source == null) {
+      return null;
+    }
+    return getMapping((Class<Object>) source.getClass(), destinationType).map(source);
+  }
+
+  /** Maps every element, looking the mapping up again only when the element class changes. */
+  @SuppressWarnings("unchecked")
+  public static <S, D> List<D> mapAll(List<? extends S> sources, Class<D> destinationType) {
+    List<D> result = new ArrayList<>(sources.size());
+    BeanMapping<Object, D> mapping = null;
+    for (S source : sources) {
+      if (source == null) {
+        result.add(null);
+        continue;
+      }
+      if (mapping == null || mapping.getSourceType() != source.getClass()) {
+        mapping = getMapping((Class<Object>) source.getClass(), destinationType);
+      }
+      result.add(mapping.map(source));
+    }
+    return result;
+  }
+
+  /**
+   * Compiles the mapping and the nested ones it uses, throwing {@link IllegalStateException} when a
+   * destination property has no source. Call it at startup for the pairs the service relies on.
+   */
+  public static void validateMapping(Class<?> sourceType, Class<?> destinationType) {
+    getInstance().beanMappings.validate(sourceType, destinationType);
+  }
+
+  /**
+   * Returns a copy of the mapper of the given type, free to be reconfigured. The shared mappers are
+   * reached only through the immutable readers and writers of {@link #getReader} and {@link
+   * #getWriter}; prefer those, copying a mapper is not cheap.
+   */
+  public static ObjectMapper getMapper(MapperType type) {
+    return mapper(type).copy();
+  }
+
+  /**
+   * Copy of the {@link MapperType#LENIENT_JSON} mapper.
+   *
+   * @deprecated every call copies a mapper and its caches start empty; use {@link #getReader} and
+   *     {@link #getWriter}, or {@link #getMapper(MapperType)} when a configurable mapper is needed.
+   */
+  @Deprecated
   public static ObjectMapper getMapper() {
-    return new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    return getMapper(MapperType.LENIENT_JSON);
   }
 
+  /**
+   * Copy of the {@link MapperType#XML} mapper.
+   *
+   * @deprecated every call copies a mapper and its caches start empty; use {@link #getReader} and
+   *     {@link #getWriter} with {@link MapperType#XML}.
+   */
+  @Deprecated
   public static XmlMapper getXmlMapper() {
-    XmlMapper xmlMapper = new XmlMapper();
-    xmlMapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
-    return xmlMapper;
+    return (XmlMapper) getMapper(MapperType.XML);
+  }
+
+  private static ObjectMapper mapper(MapperType type) {
+    return getInstance().mappers.get(type);
+  }
+
+  public static JavaType constructType(Class<?> type) {
+    return mapper(MapperType.JSON).constructType(type);
+  }
+
+  public static JavaType constructType(TypeReference<?> type) {
+    return mapper(MapperType.JSON).constructType(type);
+  }
+
+  public static ObjectReader getReader(MapperType mapperType, Class<?> type) {
+    return getReader(mapperType, constructType(type));
+  }
+
+  public static ObjectReader getReader(MapperType mapperType, TypeReference<?> type) {
+    return getReader(mapperType, constructType(type));
+  }
+
+  public static ObjectReader getReader(MapperType mapperType, JavaType type) {
+    return getInstance()
+        .readers
+        .get(mapperType)
+        .computeIfAbsent(type, mapper(mapperType)::readerFor);
+  }
+
+  /** Writer that serializes by the runtime type of each value. */
+  public static ObjectWriter getWriter(MapperType mapperType) {
+    return getInstance().defaultWriters.get(mapperType);
+  }
+
+  public static ObjectWriter getWriter(MapperType mapperType, Class<?> type) {
+    return getWriter(mapperType, constructType(type));
+  }
+
+  public static ObjectWriter getWriter(MapperType mapperType, JavaType type) {
+    return getInstance()
+        .writers
+        .get(mapperType)
+        .computeIfAbsent(type, mapper(mapperType)::writerFor);
+  }
+
+  /**
+   * Creates the readers and writers of the given types for every mapper, which resolves their
+   * deserializers and serializers, so the first calls at runtime do not pay for it.
+   */
+  public static void warmUp(Class<?>... types) {
+    for (MapperType mapperType : MapperType.values()) {
+      for (Class<?> type : types) {
+        JavaType javaType = constructType(type);
+        getReader(mapperType, javaType);
+        getWriter(mapperType, javaType);
+      }
+    }
   }
 }
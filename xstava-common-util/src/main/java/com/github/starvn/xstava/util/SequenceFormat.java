@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.util;
+
+/** How {@link MapperUtil#writeValues} lays out a sequence of values. */
+public enum SequenceFormat {
+  /** One JSON array holding every value. */
+  ARRAY,
+  /** Newline-delimited JSON: one value per line. */
+  NDJSON
+}
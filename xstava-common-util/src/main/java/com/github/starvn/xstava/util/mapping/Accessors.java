@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.util.mapping;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Turns getters, setters and no-arg constructors into functional interfaces. They are spun with
+ * {@link LambdaMetafactory}, so calls are as fast as direct calls once inlined; when that is not
+ * possible, e.g. for classes the lookup cannot see, a plain {@link MethodHandle} is used.
+ */
+@Slf4j
+@UtilityClass
+class Accessors {
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  @SuppressWarnings("unchecked")
+  static Function<Object, Object> getter(Method method) throws IllegalAccessException {
+    MethodHandles.Lookup lookup = lookupFor(method.getDeclaringClass());
+    MethodHandle handle = lookup.unreflect(method);
+    try {
+      CallSite site =
+          LambdaMetafactory.metafactory(
+              lookup,
+              "apply",
+              MethodType.methodType(Function.class),
+              MethodType.methodType(Object.class, Object.class),
+              handle,
+              MethodType.methodType(wrap(method.getReturnType()), method.getDeclaringClass()));
+      return (Function<Object, Object>) site.getTarget().invoke();
+    } catch (Throwable ex) {
+      log.debug("(getter) method: {}|fall back to method handle|{}", method, ex.toString());
+      MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Object.class));
+      return source -> {
+        try {
+          return generic.invokeExact(source);
+        } catch (RuntimeException | Error rethrown) {
+          throw rethrown;
+        } catch (Throwable cause) {
+          throw new IllegalStateException(cause);
+        }
+      };
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static BiConsumer<Object, Object> setter(Method method) throws IllegalAccessException {
+    MethodHandles.Lookup lookup = lookupFor(method.getDeclaringClass());
+    MethodHandle handle = lookup.unreflect(method);
+    try {
+      CallSite site =
+          LambdaMetafactory.metafactory(
+              lookup,
+              "accept",
+              MethodType.methodType(BiConsumer.class),
+              MethodType.methodType(void.class, Object.class, Object.class),
+              handle,
+              MethodType.methodType(
+                  void.class, method.getDeclaringClass(), wrap(method.getParameterTypes()[0])));
+      return (BiConsumer<Object, Object>) site.getTarget().invoke();
+    } catch (Throwable ex) {
+      log.debug("(setter) method: {}|fall back to method handle|{}", method, ex.toString());
+      MethodHandle generic =
+          handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+      return (target, value) -> {
+        try {
+          generic.invokeExact(target, value);
+        } catch (RuntimeException | Error rethrown) {
+          throw rethrown;
+        } catch (Throwable cause) {
+          throw new IllegalStateException(cause);
+        }
+      };
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static Supplier<Object> constructor(Class<?> type)
+      throws IllegalAccessException, NoSuchMethodException {
+    MethodHandles.Lookup lookup = lookupFor(type);
+    MethodHandle handle = lookup.findConstructor(type, MethodType.methodType(void.class));
+    try {
+      CallSite site =
+          LambdaMetafactory.metafactory(
+              lookup,
+              "get",
+              MethodType.methodType(Supplier.class),
+              MethodType.methodType(Object.class),
+              handle,
+              MethodType.methodType(type));
+      return (Supplier<Object>) site.getTarget().invoke();
+    } catch (Throwable ex) {
+      log.debug("(constructor) type: {}|fall back to method handle|{}", type, ex.toString());
+      MethodHandle generic = handle.asType(MethodType.methodType(Object.class));
+      return () -> {
+        try {
+          return generic.invokeExact();
+        } catch (RuntimeException | Error rethrown) {
+          throw rethrown;
+        } catch (Throwable cause) {
+          throw new IllegalStateException(cause);
+        }
+      };
+    }
+  }
+
+  static Class<?> wrap(Class<?> type) {
+    return MethodType.methodType(type).wrap().returnType();
+  }
+
+  private static MethodHandles.Lookup lookupFor(Class<?> type) throws IllegalAccessException {
+    return MethodHandles.privateLookupIn(type, LOOKUP);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.util.mapping;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Compiled mapping from one bean type to another: a destination constructor plus one getter/setter
+ * pair per property with the same name on both sides. Built once per pair by {@link BeanMappings}.
+ *
+ * <p>The copy is deep for beans, collections, maps and arrays, which get new instances on the
+ * destination side; other values such as strings, numbers, enums and dates are shared with the
+ * source. Within one {@link #map} call every source bean is mapped once, so shared references and
+ * cycles in the source graph are reproduced in the destination.
+ */
+public final class BeanMapping<S, D> {
+
+  private final Class<S> sourceType;
+  private final Class<D> destinationType;
+  private final Supplier<Object> constructor;
+  private final Property[] properties;
+  private final List<String> mappedProperties;
+  private final List<String> unmappedProperties;
+  private final List<Class<?>[]> nestedTypes;
+  private final boolean nested;
+
+  BeanMapping(
+      Class<S> sourceType,
+      Class<D> destinationType,
+      Supplier<Object> constructor,
+      List<Property> properties,
+      List<String> unmappedProperties) {
+    this.sourceType = sourceType;
+    this.destinationType = destinationType;
+    this.constructor = constructor;
+    this.properties = properties.toArray(new Property[0]);
+    List<String> names = new ArrayList<>(properties.size());
+    properties.forEach(property -> names.add(property.name));
+    this.mappedProperties = Collections.unmodifiableList(names);
+    this.unmappedProperties = Collections.unmodifiableList(unmappedProperties);
+    this.nestedTypes = new ArrayList<>();
+    properties.stream()
+        .filter(property -> property.nestedTypes != null)
+        .forEach(property -> nestedTypes.add(property.nestedTypes));
+    this.nested = !nestedTypes.isEmpty();
+  }
+
+  @SuppressWarnings("unchecked")
+  public D map(S source) {
+    if (source == null) {
+      return null;
+    }
+    // only mappings that descend into beans can meet a bean twice
+    return (D) map(source, nested ? new IdentityHashMap<>() : null);
+  }
+
+  /** Maps {@code source}, reusing the destinations already created for it in this call. */
+  Object map(Object source, Map<Object, Object> mapped) {
+    if (mapped != null) {
+      Object existing = mapped.get(source);
+      if (destinationType.isInstance(existing)) {
+        return existing;
+      }
+    }
+
+    Object destination = constructor.get();
+    if (mapped != null) {
+      mapped.putIfAbsent(source, destination);
+    }
+    for (Property property : properties) {
+      property.copy(source, destination, mapped);
+    }
+    return destination;
+  }
+
+  public List<D> mapAll(List<? extends S> sources) {
+    List<D> destinations = new ArrayList<>(sources.size());
+    for (S source : sources) {
+      destinations.add(map(source));
+    }
+    return destinations;
+  }
+
+  public Class<S> getSourceType() {
+    return sourceType;
+  }
+
+  public Class<D> getDestinationType() {
+    return destinationType;
+  }
+
+  public List<String> getMappedProperties() {
+    return mappedProperties;
+  }
+
+  /** Writable destination properties that no source property maps to. */
+  public List<String> getUnmappedProperties() {
+    return unmappedProperties;
+  }
+
+  /** Source and destination types of the nested mappings this one delegates to. */
+  List<Class<?>[]> getNestedTypes() {
+    return nestedTypes;
+  }
+
+  /** Turns a non-null source value into the destination value. */
+  interface Converter {
+
+    Object convert(Object value, Map<Object, Object> mapped);
+  }
+
+  static final class Property {
+
+    private final String name;
+    private final Function<Object, Object> getter;
+    private final Converter converter;
+    private final BiConsumer<Object, Object> setter;
+    private final boolean primitive;
+    private final Class<?>[] nestedTypes;
+
+    Property(
+        String name,
+        Function<Object, Object> getter,
+        Converter converter,
+        BiConsumer<Object, Object> setter,
+        boolean primitive,
+        Class<?>[] nestedTypes) {
+      this.name = name;
+      this.getter = getter;
+      this.converter = converter;
+      this.setter = setter;
+      this.primitive = primitive;
+      this.nestedTypes = nestedTypes;
+    }
+
+    void copy(Object source, Object destination, Map<Object, Object> mapped) {
+      Object value = getter.apply(source);
+      if (value == null && primitive) {
+        return;
+      }
+      setter.accept(
+          destination,
+          value == null || converter == null ? value : converter.convert(value, mapped));
+    }
+  }
+}
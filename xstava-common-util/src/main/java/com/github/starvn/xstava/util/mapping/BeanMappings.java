@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.util.mapping;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import lombok.Value;
+
+/**
+ * Builds and caches a {@link BeanMapping} per source/destination pair. Properties match by exact
+ * name, like ModelMapper's STRICT strategy. Beans are mapped with the nested pair's mapping, also
+ * when both sides have the same type; lists and sets become new {@code ArrayList}s and {@code
+ * LinkedHashSet}s mapped element by element, maps with the same type arguments new {@code
+ * LinkedHashMap}s and arrays copies. Other values are shared when the destination type accepts
+ * them. Anything else is left unmapped and reported by {@link #validate}.
+ */
+public class BeanMappings {
+
+  private final ConcurrentMap<Key, BeanMapping<?, ?>> mappings = new ConcurrentHashMap<>();
+
+  @SuppressWarnings("unchecked")
+  public <S, D> BeanMapping<S, D> get(Class<S> sourceType, Class<D> destinationType) {
+    Key key = new Key(sourceType, destinationType);
+    BeanMapping<?, ?> mapping = mappings.get(key);
+    if (mapping == null) {
+      mapping = mappings.computeIfAbsent(key, ignored -> compile(sourceType, destinationType));
+    }
+    return (BeanMapping<S, D>) mapping;
+  }
+
+  /**
+   * Compiles the mapping of the pair and of every nested pair it uses, and fails when any of them
+   * leaves a destination property unmapped. Meant to run at startup.
+   */
+  public void validate(Class<?> sourceType, Class<?> destinationType) {
+    List<String> unmapped = new ArrayList<>();
+    validate(sourceType, destinationType, new HashSet<>(), unmapped);
+    if (!unmapped.isEmpty()) {
+      throw new IllegalStateException(
+          "unmapped properties from " + sourceType.getName() + ": " + unmapped);
+    }
+  }
+
+  private void validate(
+      Class<?> sourceType, Class<?> destinationType, Set<Key> visited, List<String> unmapped) {
+    if (!visited.add(new Key(sourceType, destinationType))) {
+      return;
+    }
+
+    BeanMapping<?, ?> mapping = get(sourceType, destinationType);
+    mapping
+        .getUnmappedProperties()
+        .forEach(property -> unmapped.add(destinationType.getSimpleName() + "." + property));
+    for (Class<?>[] nested : mapping.getNestedTypes()) {
+      validate(nested[0], nested[1], visited, unmapped);
+    }
+  }
+
+  private <S, D> BeanMapping<S, D> compile(Class<S> sourceType, Class<D> destinationType) {
+    try {
+      Map<String, Method> getters = getters(sourceType);
+      List<BeanMapping.Property> properties = new ArrayList<>();
+      List<String> unmapped = new ArrayList<>();
+      for (PropertyDescriptor descriptor :
+          Introspector.getBeanInfo(destinationType).getPropertyDescriptors()) {
+        Method setter = descriptor.getWriteMethod();
+        if (setter == null) {
+          continue;
+        }
+
+        Method getter = getters.get(descriptor.getName());
+        BeanMapping.Property property = getter != null ? property(descriptor, getter) : null;
+        if (property != null) {
+          properties.add(property);
+        } else {
+          unmapped.add(descriptor.getName());
+        }
+      }
+      return new BeanMapping<>(
+          sourceType,
+          destinationType,
+          Accessors.constructor(destinationType),
+          properties,
+          unmapped);
+    } catch (IntrospectionException | ReflectiveOperationException ex) {
+      throw new IllegalArgumentException(
+          "cannot map " + sourceType.getName() + " to " + destinationType.getName(), ex);
+    }
+  }
+
+  private BeanMapping.Property property(PropertyDescriptor descriptor, Method getter)
+      throws IllegalAccessException {
+    Method setter = descriptor.getWriteMethod();
+    Class<?> from = getter.getReturnType();
+    Class<?> to = setter.getParameterTypes()[0];
+    BeanMapping.Converter converter;
+    Class<?>[] nestedTypes = null;
+
+    if (Collection.class.isAssignableFrom(from) && Collection.class.isAssignableFrom(to)) {
+      Class<?> fromElement = elementType(getter.getGenericReturnType());
+      Class<?> toElement = elementType(setter.getGenericParameterTypes()[0]);
+      if (fromElement == null || toElement == null) {
+        return null;
+      }
+      BeanMapping.Converter element;
+      if (isBean(fromElement) && isBean(toElement)) {
+        element = nested(fromElement, toElement);
+        nestedTypes = new Class<?>[] {fromElement, toElement};
+      } else if (Accessors.wrap(toElement).isAssignableFrom(Accessors.wrap(fromElement))) {
+        element = null;
+      } else {
+        return null;
+      }
+      converter = collection(to, element);
+    } else if (Map.class.isAssignableFrom(from) && Map.class.isAssignableFrom(to)) {
+      converter =
+          to.isAssignableFrom(LinkedHashMap.class) && isSameTypeArguments(getter, setter)
+              ? (value, mapped) -> new LinkedHashMap<>((Map<?, ?>) value)
+              : null;
+    } else if (from.isArray() && to.isAssignableFrom(from)) {
+      converter = (value, mapped) -> copyArray(value);
+    } else if (isBean(from) && isBean(to)) {
+      converter = nested(from, to);
+      nestedTypes = new Class<?>[] {from, to};
+    } else if (Accessors.wrap(to).isAssignableFrom(Accessors.wrap(from))) {
+      return new BeanMapping.Property(
+          descriptor.getName(),
+          Accessors.getter(getter),
+          null,
+          Accessors.setter(setter),
+          to.isPrimitive(),
+          null);
+    } else {
+      return null;
+    }
+
+    if (converter == null) {
+      return null;
+    }
+    return new BeanMapping.Property(
+        descriptor.getName(),
+        Accessors.getter(getter),
+        converter,
+        Accessors.setter(setter),
+        to.isPrimitive(),
+        nestedTypes);
+  }
+
+  /** Resolves the nested mapping on first use, so recursive types do not recurse here. */
+  private BeanMapping.Converter nested(Class<?> from, Class<?> to) {
+    return new BeanMapping.Converter() {
+      private volatile BeanMapping<?, ?> mapping;
+
+      @Override
+      public Object convert(Object value, Map<Object, Object> mapped) {
+        BeanMapping<?, ?> current = mapping;
+        if (current == null) {
+          current = get(from, to);
+          mapping = current;
+        }
+        return current.map(value, mapped);
+      }
+    };
+  }
+
+  private static BeanMapping.Converter collection(Class<?> to, BeanMapping.Converter element) {
+    boolean isSet = to.isAssignableFrom(LinkedHashSet.class);
+    if (!isSet && !to.isAssignableFrom(ArrayList.class)) {
+      return null;
+    }
+
+    return (value, mapped) -> {
+      Collection<?> source = (Collection<?>) value;
+      Collection<Object> target =
+          isSet ? new LinkedHashSet<>(source.size() * 2) : new ArrayList<>(source.size());
+      for (Object item : source) {
+        target.add(item == null || element == null ? item : element.convert(item, mapped));
+      }
+      return target;
+    };
+  }
+
+  private static Object copyArray(Object array) {
+    int length = Array.getLength(array);
+    Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+    System.arraycopy(array, 0, copy, 0, length);
+    return copy;
+  }
+
+  private static boolean isSameTypeArguments(Method getter, Method setter) {
+    Type from = getter.getGenericReturnType();
+    Type to = setter.getGenericParameterTypes()[0];
+    if (!(from instanceof ParameterizedType) || !(to instanceof ParameterizedType)) {
+      return from instanceof Class && to instanceof Class;
+    }
+    return Arrays.equals(
+        ((ParameterizedType) from).getActualTypeArguments(),
+        ((ParameterizedType) to).getActualTypeArguments());
+  }
+
+  private static Map<String, Method> getters(Class<?> type) throws IntrospectionException {
+    Map<String, Method> getters = new HashMap<>();
+    if (type.isRecord()) {
+      for (RecordComponent component : type.getRecordComponents()) {
+        getters.put(component.getName(), component.getAccessor());
+      }
+      return getters;
+    }
+
+    for (PropertyDescriptor descriptor : Introspector.getBeanInfo(type).getPropertyDescriptors()) {
+      if (descriptor.getReadMethod() != null && !"class".equals(descriptor.getName())) {
+        getters.put(descriptor.getName(), descriptor.getReadMethod());
+      }
+    }
+    return getters;
+  }
+
+  private static Class<?> elementType(Type type) {
+    if (type instanceof ParameterizedType) {
+      Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+      if (arguments.length == 1 && arguments[0] instanceof Class) {
+        return (Class<?>) arguments[0];
+      }
+    }
+    return null;
+  }
+
+  private static boolean isBean(Class<?> type) {
+    if (type.isPrimitive()
+        || type.isArray()
+        || type.isEnum()
+        || type.isInterface()
+        || Modifier.isAbstract(type.getModifiers())
+        || type.getName().startsWith("java.")) {
+      return false;
+    }
+
+    try {
+      type.getDeclaredConstructor();
+      return true;
+    } catch (NoSuchMethodException ex) {
+      return false;
+    }
+  }
+
+  @Value
+  private static class Key {
+
+    Class<?> source;
+    Class<?> destination;
+  }
+}
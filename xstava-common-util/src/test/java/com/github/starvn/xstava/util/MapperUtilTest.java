@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2021 Huy Duc Dao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.starvn.xstava.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class MapperUtilTest {
+
+  private static final String JSON =
+      "{\"a\":{\"b\":[{\"c\":1},{\"c\":2,\"d\":null}],\"e\":\"x\"},\"f\":null,\"g\":[10,20,30]}";
+
+  @Test
+  void extractsNestedValues() {
+    assertEquals("x", MapperUtil.extract(JSON, "/a/e"));
+    assertEquals(Map.of("c", 1), MapperUtil.extract(JSON, "/a/b/0"));
+    assertEquals(List.of(10, 20, 30), MapperUtil.extract(JSON, "/g"));
+    assertEquals(JSON.length(), MapperUtil.toJson(MapperUtil.extract(JSON, "")).length());
+  }
+
+  @Test
+  void extractsArrayElements() {
+    assertEquals(2, MapperUtil.extract(JSON, "/a/b/1/c"));
+    assertEquals(30, MapperUtil.extract(JSON, "/g/2"));
+    assertEquals(20L, MapperUtil.extract(JSON, "/g/1", Long.class));
+    assertNull(MapperUtil.extract(JSON, "/g/3"));
+    assertNull(MapperUtil.extract(JSON, "/g/-"));
+    assertNull(MapperUtil.extract(JSON, "/g/x"));
+  }
+
+  @Test
+  void returnsNullForMissingAndNullValues() {
+    assertNull(MapperUtil.extract(JSON, "/missing"));
+    assertNull(MapperUtil.extract(JSON, "/a/missing/c"));
+    assertNull(MapperUtil.extract(JSON, "/f"));
+    assertNull(MapperUtil.extract(JSON, "/f/g"));
+    assertNull(MapperUtil.extract(JSON, "/a/b/1/d"));
+  }
+
+  @Test
+  void returnsNullForInvalidPointersAndJson() {
+    assertNull(MapperUtil.extract(JSON, "a/e"));
+    assertNull(MapperUtil.extract("{\"a\":", "/a"));
+  }
+
+  @Test
+  void ignoresUnknownPropertiesOfTypedValues() {
+    Value value = MapperUtil.extract(JSON, "/a/b/1", Value.class);
+
+    assertEquals(2, value.c);
+  }
+
+  @Test
+  void extractsSeveralPointersInOrder() {
+    Map<String, Object> expected = new LinkedHashMap<>();
+    expected.put("/g/1", 20);
+    expected.put("/f", null);
+    expected.put("/a/b/0/c", 1);
+
+    Map<String, Object> result =
+        MapperUtil.extractAll(JSON, "/g/1", "/missing", "/f", "/g/9", "a/e", "/a/b/0/c");
+
+    assertEquals(expected, result);
+    assertEquals(Arrays.asList("/g/1", "/f", "/a/b/0/c"), Arrays.asList(result.keySet().toArray()));
+  }
+
+  @Test
+  void extractsNothingFromEmptyInput() {
+    assertTrue(MapperUtil.extractAll(JSON).isEmpty());
+    assertTrue(MapperUtil.extractAll("[]", "/0").isEmpty());
+  }
+
+  static class Value {
+
+    public int c;
+  }
+}